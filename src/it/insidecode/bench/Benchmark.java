@@ -0,0 +1,90 @@
+package it.insidecode.bench;
+
+/**
+ * Un micro-benchmark eseguito da {@link BenchmarkRunner}. L'operazione
+ * misurata e' {@link #op()}, eseguita a gruppi di {@link #getBatch()}
+ * chiamate: il tempo e la memoria allocata vengono misurati per l'intero
+ * gruppo e divisi per il numero di operazioni, cosi' che anche operazioni
+ * molto brevi siano misurabili con {@link System#nanoTime()}. Prima di ogni
+ * gruppo viene chiamato {@link #prepare()}, escluso dalla misurazione, che
+ * permette di ripristinare lo stato modificato dalle operazioni (ad esempio il
+ * grafo su cui sono stati tracciati dei cammini).
+ *
+ * @author fscozzafava
+ *
+ */
+public abstract class Benchmark {
+
+	/**
+	 * Nome del benchmark
+	 */
+	private String name;
+
+	/**
+	 * Numero di operazioni misurate insieme
+	 */
+	private int batch;
+
+	/**
+	 * Un nuovo {@link Benchmark}
+	 *
+	 * @param name
+	 *            il nome del benchmark
+	 * @param batch
+	 *            il numero di operazioni misurate insieme
+	 */
+	protected Benchmark(String name, int batch) {
+		this.name = name;
+		this.batch = Math.max(1, batch);
+	}
+
+	/**
+	 * @return il nome del benchmark
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return il numero di operazioni misurate insieme
+	 */
+	public int getBatch() {
+		return batch;
+	}
+
+	/**
+	 * Prepara le strutture dati del benchmark, chiamato una sola volta prima
+	 * delle misurazioni
+	 *
+	 * @throws Exception
+	 */
+	protected void setUp() throws Exception {
+	}
+
+	/**
+	 * Chiamato prima di ogni gruppo di operazioni, non e' incluso nella
+	 * misurazione
+	 *
+	 * @throws Exception
+	 */
+	protected void prepare() throws Exception {
+	}
+
+	/**
+	 * L'operazione misurata. Il valore restituito viene accumulato dal runner
+	 * in modo che il compilatore JIT non possa eliminare l'operazione
+	 *
+	 * @return un valore dipendente dal risultato dell'operazione
+	 * @throws Exception
+	 */
+	protected abstract long op() throws Exception;
+
+	/**
+	 * Rilascia le risorse del benchmark, chiamato una sola volta al termine
+	 * delle misurazioni
+	 *
+	 * @throws Exception
+	 */
+	protected void tearDown() throws Exception {
+	}
+}
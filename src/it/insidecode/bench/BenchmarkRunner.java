@@ -0,0 +1,232 @@
+package it.insidecode.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Esegue i {@link Benchmark} misurando il tempo medio per operazione e la
+ * memoria allocata per operazione. Ogni benchmark viene eseguito per un certo
+ * numero di iterazioni di riscaldamento, i cui risultati sono scartati (in
+ * modo che il compilatore JIT abbia ottimizzato il codice misurato), e per un
+ * certo numero di iterazioni di misurazione. Ogni iterazione esegue gruppi di
+ * operazioni finche' non e' trascorsa la durata indicata.
+ * La memoria allocata e' misurata tramite
+ * {@code com.sun.management.ThreadMXBean}, quando la JVM lo supporta.
+ *
+ * @author fscozzafava
+ *
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Risultato di un benchmark
+	 */
+	public static class Result {
+
+		/**
+		 * Nome del benchmark
+		 */
+		private String name;
+
+		/**
+		 * Tempo medio per operazione in nanosecondi
+		 */
+		private double nanos;
+
+		/**
+		 * Deviazione standard del tempo per operazione tra le iterazioni
+		 */
+		private double error;
+
+		/**
+		 * Byte allocati per operazione (-1 se non misurabili)
+		 */
+		private double bytes;
+
+		/**
+		 * Numero di operazioni misurate
+		 */
+		private long ops;
+
+		private Result(String name, double nanos, double error, double bytes,
+				long ops) {
+			this.name = name;
+			this.nanos = nanos;
+			this.error = error;
+			this.bytes = bytes;
+			this.ops = ops;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return il tempo medio per operazione in nanosecondi
+		 */
+		public double getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return la deviazione standard del tempo per operazione
+		 */
+		public double getError() {
+			return error;
+		}
+
+		/**
+		 * @return i byte allocati per operazione (-1 se non misurabili)
+		 */
+		public double getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return il numero di operazioni misurate
+		 */
+		public long getOps() {
+			return ops;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-40s %14.1f +- %10.1f ns/op %14s B/op %10d ops",
+					name, nanos, error, bytes < 0 ? "n/a" : String.format(
+							"%.1f", bytes), ops);
+		}
+	}
+
+	/**
+	 * Valore accumulato dai risultati delle operazioni, rende impossibile al
+	 * compilatore JIT eliminare le operazioni misurate
+	 */
+	private static volatile long sink;
+
+	/**
+	 * Numero di iterazioni di riscaldamento
+	 */
+	private int warmup;
+
+	/**
+	 * Numero di iterazioni di misurazione
+	 */
+	private int iterations;
+
+	/**
+	 * Durata minima di un'iterazione in nanosecondi
+	 */
+	private long iterationNanos;
+
+	/**
+	 * Bean usato per misurare la memoria allocata dal thread corrente (null
+	 * se la JVM non lo supporta)
+	 */
+	private com.sun.management.ThreadMXBean allocations;
+
+	/**
+	 * Un nuovo {@link BenchmarkRunner} con 5 iterazioni di riscaldamento e 10
+	 * di misurazione da mezzo secondo ciascuna
+	 */
+	public BenchmarkRunner() {
+		this(5, 10, 500);
+	}
+
+	/**
+	 * Un nuovo {@link BenchmarkRunner}
+	 *
+	 * @param warmup
+	 *            il numero di iterazioni di riscaldamento
+	 * @param iterations
+	 *            il numero di iterazioni di misurazione
+	 * @param iterationMillis
+	 *            la durata minima di un'iterazione in millisecondi
+	 */
+	public BenchmarkRunner(int warmup, int iterations, long iterationMillis) {
+		this.warmup = Math.max(0, warmup);
+		this.iterations = Math.max(1, iterations);
+		this.iterationNanos = iterationMillis * 1000000L;
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) bean;
+			if (b.isThreadAllocatedMemorySupported()) {
+				b.setThreadAllocatedMemoryEnabled(true);
+				allocations = b;
+			}
+		}
+	}
+
+	/**
+	 * Esegue un benchmark
+	 *
+	 * @param b
+	 *            il benchmark
+	 * @return il risultato delle misurazioni
+	 * @throws Exception
+	 *             se il benchmark fallisce
+	 */
+	public Result run(Benchmark b) throws Exception {
+		b.setUp();
+		try {
+			for (int i = 0; i < warmup; i++)
+				iteration(b, null);
+			double[] nanos = new double[iterations];
+			long[] totals = new long[2]; // operazioni e byte allocati
+			for (int i = 0; i < iterations; i++)
+				nanos[i] = iteration(b, totals);
+			double mean = 0;
+			for (double n : nanos)
+				mean += n;
+			mean /= iterations;
+			double variance = 0;
+			for (double n : nanos)
+				variance += (n - mean) * (n - mean);
+			double error = iterations > 1 ? Math.sqrt(variance
+					/ (iterations - 1)) : 0;
+			double bytes = allocations == null ? -1 : (double) totals[1]
+					/ totals[0];
+			return new Result(b.getName(), mean, error, bytes, totals[0]);
+		} finally {
+			b.tearDown();
+		}
+	}
+
+	/**
+	 * Esegue un'iterazione del benchmark
+	 *
+	 * @param b
+	 *            il benchmark
+	 * @param totals
+	 *            se non null vi vengono sommati il numero di operazioni e i
+	 *            byte allocati
+	 * @return il tempo medio per operazione dell'iterazione
+	 * @throws Exception
+	 */
+	private double iteration(Benchmark b, long[] totals) throws Exception {
+		long thread = Thread.currentThread().getId();
+		long elapsed = 0;
+		long ops = 0;
+		long bytes = 0;
+		long acc = 0;
+		// la durata dell'iterazione comprende anche prepare(), che puo' essere molto piu' costosa dell'operazione
+		long begin = System.nanoTime();
+		while (System.nanoTime() - begin < iterationNanos || ops == 0) {
+			b.prepare();
+			long before = allocations == null ? 0 : allocations
+					.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			for (int i = 0; i < b.getBatch(); i++)
+				acc += b.op();
+			elapsed += System.nanoTime() - start;
+			if (allocations != null)
+				bytes += allocations.getThreadAllocatedBytes(thread) - before;
+			ops += b.getBatch();
+		}
+		sink += acc;
+		if (totals != null) {
+			totals[0] += ops;
+			totals[1] += bytes;
+		}
+		return (double) elapsed / ops;
+	}
+}
@@ -0,0 +1,344 @@
+package it.insidecode.bench;
+
+import it.insidecode.core.CompactGraph;
+import it.insidecode.core.Graph;
+import it.insidecode.core.Router;
+import it.insidecode.core.RoutingOptions;
+import it.insidecode.parser.InputParser;
+import it.insidecode.parser.OutputParser;
+import it.insidecode.parser.Sequence;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Micro-benchmark delle componenti principali del progetto: costruzione del
+ * {@link Graph} e del {@link CompactGraph}, caricamento delle figure tramite
+ * {@link Graph#removeBigNode(int)}, ricerca dei cammini con {@link Router} su
+ * griglie vuote e congestionate, lettura del file di input con
+ * {@link InputParser} e codifica dell'output con {@link OutputParser}.
+ * <p>
+ * Uso: {@code Benchmarks [-quick] [-radix] [-astar] [-bidir] [-hier] [-delta] [-input file] [filtro]}
+ * dove il filtro e' un'espressione regolare sui nomi dei benchmark da
+ * eseguire. Le opzioni di ricerca si applicano ai benchmark del router.
+ *
+ * @author fscozzafava
+ *
+ */
+public class Benchmarks {
+
+	/**
+	 * Lato della griglia usata per i benchmark del router
+	 */
+	private static final int BOARD = 300;
+
+	/**
+	 * Seme dei generatori casuali, in modo che le esecuzioni siano confrontabili
+	 */
+	private static final long SEED = 42;
+
+	public static void main(String[] args) throws Exception {
+		boolean quick = false;
+		String input = "tests" + File.separator + "input.bin";
+		Pattern filter = Pattern.compile(".*");
+		RoutingOptions options = new RoutingOptions();
+		for (int i = 0; i < args.length; i++) {
+			String s = args[i];
+			if (s.equals("-quick"))
+				quick = true;
+			else if (s.equals("-radix"))
+				options.setQueue(RoutingOptions.Queue.RADIX);
+			else if (s.equals("-astar"))
+				options.setSearch(RoutingOptions.Search.ASTAR);
+			else if (s.equals("-bidir"))
+				options.setSearch(RoutingOptions.Search.BIDIRECTIONAL);
+			else if (s.equals("-hier"))
+				options.setSearch(RoutingOptions.Search.HIERARCHICAL);
+			else if (s.equals("-delta"))
+				options.setSearch(RoutingOptions.Search.DELTA_STEPPING);
+			else if (s.equals("-input") && i + 1 < args.length)
+				input = args[++i];
+			else
+				filter = Pattern.compile(s);
+		}
+		BenchmarkRunner runner = quick ? new BenchmarkRunner(1, 3, 200)
+				: new BenchmarkRunner();
+		for (Benchmark b : benchmarks(options, input)) {
+			if (!filter.matcher(b.getName()).find())
+				continue;
+			System.out.println(runner.run(b));
+		}
+	}
+
+	/**
+	 * @param options
+	 *            le opzioni dei benchmark del router
+	 * @param input
+	 *            il file di input per il benchmark del parser
+	 * @return la lista dei benchmark disponibili
+	 */
+	private static List<Benchmark> benchmarks(RoutingOptions options,
+			String input) {
+		List<Benchmark> res = new ArrayList<Benchmark>();
+		for (int size : new int[] { 100, 500, 1000, 2000 })
+			res.add(graphConstruction(size));
+		for (int size : new int[] { 100, 500, 1000, 2000 })
+			res.add(compactConstruction(size));
+		res.add(figureLoading(500, 0.2));
+		Graph empty = new Graph(BOARD, BOARD);
+		Graph congested = serpentine(BOARD, BOARD);
+		int source = node(1, 1);
+		int near = node(2, 12);
+		int far = node(BOARD - 2, BOARD - 2);
+		int enclosed = node(BOARD / 2, BOARD / 2);
+		res.add(route("router.empty.short", empty, source, near, options));
+		res.add(route("router.empty.long", empty, source, far, options));
+		res.add(route("router.empty.unreachable", enclose(empty, enclosed),
+				source, enclosed, options));
+		res.add(route("router.congested.short", congested, source, near,
+				options));
+		res.add(route("router.congested.long", congested, source, far,
+				options));
+		res.add(route("router.congested.unreachable", enclose(congested,
+				enclosed), source, enclosed, options));
+		if (new File(input).exists())
+			res.add(inputParsing(input));
+		res.add(encoding(congested, options));
+		return res;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return il primo {@code node} del {@code BigNode} (x, y) della griglia
+	 *         dei benchmark del router
+	 */
+	private static int node(int x, int y) {
+		return (x * BOARD + y) * 4;
+	}
+
+	/**
+	 * Costruisce una griglia attraversata da muri verticali ogni 4 colonne,
+	 * ciascuno con un solo varco alternativamente in alto e in basso: il
+	 * cammino tra due angoli opposti e' obbligato a serpeggiare per l'intera
+	 * griglia
+	 *
+	 * @param width
+	 * @param height
+	 * @return il grafo congestionato
+	 */
+	private static Graph serpentine(int width, int height) {
+		Graph g = new Graph(width, height);
+		boolean top = true;
+		for (int x = 4; x < width - 2; x += 4) {
+			for (int y = 0; y < height; y++)
+				if (y != (top ? 0 : height - 1))
+					g.removeBigNode((x * height + y) * 4);
+			top = !top;
+		}
+		return g;
+	}
+
+	/**
+	 * Restituisce una copia del grafo in cui il {@code BigNode} indicato e'
+	 * circondato da un anello di {@code BigNode} rimossi, e quindi
+	 * irraggiungibile
+	 *
+	 * @param g
+	 * @param node
+	 * @return la copia del grafo
+	 */
+	private static Graph enclose(Graph g, int node) {
+		Graph res = new Graph(g);
+		int x = (node >> 2) / g.getHeight();
+		int y = (node >> 2) % g.getHeight();
+		// se l'interno dell'anello cade su un muro racchiudiamo il nodo in una griglia vuota
+		for (int i = -1; i <= 1; i++)
+			for (int j = -1; j <= 1; j++)
+				if (!res.existsBig(((x + i) * g.getHeight() + y + j) * 4))
+					return enclose(new Graph(g.getWidth(), g.getHeight()), node);
+		for (int i = -2; i <= 2; i++)
+			for (int j = -2; j <= 2; j++)
+				if (Math.abs(i) == 2 || Math.abs(j) == 2)
+					res.removeBigNode(((x + i) * g.getHeight() + y + j) * 4);
+		return res;
+	}
+
+	/**
+	 * @param size
+	 *            il lato della griglia
+	 * @return il benchmark della costruzione di un grafo size x size
+	 */
+	private static Benchmark graphConstruction(final int size) {
+		return new Benchmark("graph.new." + size + "x" + size, 1) {
+			@Override
+			protected long op() {
+				return new Graph(size, size).getWidth();
+			}
+		};
+	}
+
+	/**
+	 * @param size
+	 *            il lato della griglia
+	 * @return il benchmark della costruzione di un {@link CompactGraph} size x
+	 *         size
+	 */
+	private static Benchmark compactConstruction(final int size) {
+		return new Benchmark("compact.new." + size + "x" + size, 1) {
+			@Override
+			protected long op() {
+				return new CompactGraph(size, size).getWidth();
+			}
+		};
+	}
+
+	/**
+	 * @param size
+	 *            il lato della griglia
+	 * @param density
+	 *            la frazione di {@code BigNode} occupati dalle figure
+	 * @return il benchmark del caricamento di figure rettangolari casuali
+	 */
+	private static Benchmark figureLoading(final int size, final double density) {
+		return new Benchmark("graph.removeBigNode." + size + "x" + size, 1) {
+			private Graph pristine;
+			private Graph g;
+			private int[] cells;
+
+			@Override
+			protected void setUp() {
+				pristine = new Graph(size, size);
+				g = new Graph(size, size);
+				Random r = new Random(SEED);
+				List<Integer> list = new ArrayList<Integer>();
+				while (list.size() < size * size * density) {
+					int x = r.nextInt(size - 10), y = r.nextInt(size - 10);
+					int w = 1 + r.nextInt(10), h = 1 + r.nextInt(10);
+					for (int i = x; i < x + w; i++)
+						for (int j = y; j < y + h; j++)
+							list.add((i * size + j) * 4);
+				}
+				cells = new int[list.size()];
+				for (int i = 0; i < cells.length; i++)
+					cells[i] = list.get(i);
+			}
+
+			@Override
+			protected void prepare() {
+				g.copyFrom(pristine);
+			}
+
+			@Override
+			protected long op() {
+				for (int c : cells)
+					g.removeBigNode(c);
+				return cells.length;
+			}
+		};
+	}
+
+	/**
+	 * @param name
+	 *            il nome del benchmark
+	 * @param board
+	 *            il grafo su cui tracciare il cammino (non viene modificato)
+	 * @param source
+	 * @param target
+	 * @param options
+	 *            le opzioni del router
+	 * @return il benchmark della ricerca di un cammino tra source e target
+	 */
+	private static Benchmark route(String name, final Graph board,
+			final int source, final int target, final RoutingOptions options) {
+		return new Benchmark(name, 1) {
+			private Graph g;
+			private Router r;
+
+			@Override
+			protected void setUp() {
+				g = new Graph(board);
+				r = new Router(g, options);
+			}
+
+			@Override
+			protected void prepare() {
+				// la ricerca rimuove dal grafo il cammino tracciato
+				g.copyFrom(board);
+			}
+
+			@Override
+			protected long op() {
+				return r.route(g, source, target).size();
+			}
+		};
+	}
+
+	/**
+	 * @param input
+	 *            il file di input
+	 * @return il benchmark della lettura del file di input
+	 */
+	private static Benchmark inputParsing(final String input) {
+		return new Benchmark("parser.input", 1) {
+			@Override
+			protected long op() throws Exception {
+				return new InputParser().parse(input).size();
+			}
+		};
+	}
+
+	/**
+	 * @param board
+	 *            il grafo su cui tracciare i cammini da codificare
+	 * @param options
+	 *            le opzioni del router
+	 * @return il benchmark della codifica dei cammini nel formato di output
+	 */
+	private static Benchmark encoding(final Graph board,
+			final RoutingOptions options) {
+		return new Benchmark("parser.output.encode", 100) {
+			private List<Sequence> lines = new ArrayList<Sequence>();
+			private File file;
+			private OutputParser op;
+
+			@Override
+			protected void setUp() throws Exception {
+				Graph g = new Graph(board);
+				Router r = new Router(g, options);
+				Random rnd = new Random(SEED);
+				for (int i = 0; i < 20; i++) {
+					int s = node(rnd.nextInt(BOARD), rnd.nextInt(BOARD));
+					int t = node(rnd.nextInt(BOARD), rnd.nextInt(BOARD));
+					lines.add(r.route(g, s, t));
+				}
+				file = File.createTempFile("encode", ".bin");
+				file.deleteOnExit();
+			}
+
+			@Override
+			protected void prepare() throws Exception {
+				// ogni gruppo di operazioni riscrive il file da capo
+				if (op != null)
+					op.close();
+				op = new OutputParser(file.getPath());
+			}
+
+			@Override
+			protected long op() throws Exception {
+				op.parse(lines);
+				return lines.size();
+			}
+
+			@Override
+			protected void tearDown() throws Exception {
+				if (op != null)
+					op.close();
+				file.delete();
+			}
+		};
+	}
+}
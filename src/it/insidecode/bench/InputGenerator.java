@@ -0,0 +1,455 @@
+package it.insidecode.bench;
+
+import it.insidecode.parser.Direction;
+import it.insidecode.parser.Format;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Generatore deterministico di file di input nel formato letto da
+ * {@link it.insidecode.parser.InputParser}. Ogni caso test e' una griglia su
+ * cui sono disposti elementi rettangolari (di cui viene codificato il
+ * contorno) che non si sovrappongono e non si toccano; gli estremi delle
+ * coppie da collegare sono posti su celle libere adiacenti al contorno di un
+ * elemento, come i piedini di un componente. Il livello di congestione e' la
+ * frazione dell'area della griglia che gli elementi cercano di occupare. A
+ * parita' di parametri e di seme il file generato e' sempre lo stesso. Il
+ * file puo' essere generato nel formato originale o in quello esteso
+ * ({@link Format}), necessario per griglie con lato maggiore di 65535.
+ * <p>
+ * Uso:
+ * {@code InputGenerator [-seed n] [-tests n] [-size WxH] [-elements n] [-element-size min:max] [-pairs n] [-congestion f] [-format legacy|extended|deflate] [file]}
+ *
+ * @author fscozzafava
+ *
+ */
+public class InputGenerator {
+
+	/**
+	 * Valore massimo di una coordinata o di una lunghezza di blocco nel
+	 * formato di input originale (due byte senza segno)
+	 */
+	private static final int MAX_VALUE = 0xFFFF;
+
+	/**
+	 * Numero massimo di nodi codificabili in un singolo byte di una sequenza
+	 * nel formato originale
+	 */
+	private static final int MAX_RUN = 31;
+
+	/**
+	 * Distanza minima tra i contorni di due elementi: lascia sempre libero un
+	 * canale su cui posizionare i piedini
+	 */
+	private static final int GAP = 2;
+
+	private long seed = 1;
+	private int tests = 1;
+	private int width = 200;
+	private int height = 200;
+	private int elements = 100;
+	private int minSize = 3;
+	private int maxSize = 15;
+	private int pairs = 100;
+	private double congestion = 0.3;
+	private Format format = Format.LEGACY;
+
+	public static void main(String[] args) throws IOException {
+		InputGenerator gen = new InputGenerator();
+		String out = "input.bin";
+		for (int i = 0; i < args.length; i++) {
+			int next = gen.configure(args, i);
+			if (next < 0)
+				out = args[i];
+			else
+				i = next;
+		}
+		gen.write(out);
+	}
+
+	/**
+	 * Interpreta l'opzione della riga di comando in posizione i
+	 *
+	 * @param args
+	 *            gli argomenti della riga di comando
+	 * @param i
+	 *            la posizione dell'opzione
+	 * @return la posizione dell'ultimo argomento consumato, -1 se l'argomento
+	 *         non e' un'opzione del generatore
+	 */
+	public int configure(String[] args, int i) {
+		String s = args[i];
+		if (i + 1 >= args.length || !s.startsWith("-"))
+			return -1;
+		String v = args[i + 1];
+		if (s.equals("-seed"))
+			setSeed(Long.parseLong(v));
+		else if (s.equals("-tests"))
+			setTests(Integer.parseInt(v));
+		else if (s.equals("-size")) {
+			String[] wh = v.split("x");
+			setSize(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]));
+		} else if (s.equals("-elements"))
+			setElements(Integer.parseInt(v));
+		else if (s.equals("-element-size")) {
+			String[] mm = v.split(":");
+			setElementSize(Integer.parseInt(mm[0]), Integer.parseInt(mm[1]));
+		} else if (s.equals("-pairs"))
+			setPairs(Integer.parseInt(v));
+		else if (s.equals("-congestion"))
+			setCongestion(Double.parseDouble(v));
+		else if (s.equals("-format"))
+			setFormat(Format.byName(v));
+		else
+			return -1;
+		return i + 1;
+	}
+
+	/**
+	 * @param seed
+	 *            il seme del generatore casuale
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @param tests
+	 *            il numero di casi test del file
+	 */
+	public void setTests(int tests) {
+		if (tests < 0)
+			throw new IllegalArgumentException("tests out of range: " + tests);
+		this.tests = tests;
+	}
+
+	/**
+	 * @param width
+	 *            la larghezza della griglia
+	 * @param height
+	 *            l'altezza della griglia
+	 */
+	public void setSize(int width, int height) {
+		if (width < 1 || height < 1 || (long) width * height * 4 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("grid size out of range: "
+					+ width + "x" + height);
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @param elements
+	 *            il numero massimo di elementi per caso test
+	 */
+	public void setElements(int elements) {
+		this.elements = Math.max(0, elements);
+	}
+
+	/**
+	 * @param min
+	 *            il lato minimo di un elemento (almeno 2)
+	 * @param max
+	 *            il lato massimo di un elemento
+	 */
+	public void setElementSize(int min, int max) {
+		if (min < 2 || max < min)
+			throw new IllegalArgumentException("invalid element size " + min
+					+ ":" + max);
+		this.minSize = min;
+		this.maxSize = max;
+	}
+
+	/**
+	 * @param pairs
+	 *            il numero di coppie da collegare per caso test
+	 */
+	public void setPairs(int pairs) {
+		if (pairs < 0)
+			throw new IllegalArgumentException("pairs out of range: " + pairs);
+		this.pairs = pairs;
+	}
+
+	/**
+	 * @param congestion
+	 *            la frazione dell'area della griglia occupata dagli elementi,
+	 *            tra 0 e 1
+	 */
+	public void setCongestion(double congestion) {
+		this.congestion = Math.max(0, Math.min(1, congestion));
+	}
+
+	/**
+	 * @param format
+	 *            il formato del file generato
+	 */
+	public void setFormat(Format format) {
+		this.format = format;
+	}
+
+	/**
+	 * Genera il file di input
+	 *
+	 * @param fileName
+	 *            il file da scrivere
+	 * @throws IOException
+	 */
+	public void write(String fileName) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(
+				fileName));
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Genera il contenuto del file di input sullo stream indicato
+	 *
+	 * @param stream
+	 *            lo stream di output
+	 * @throws IOException
+	 */
+	public void write(OutputStream stream) throws IOException {
+		if (!format.isExtended()
+				&& (tests > MAX_VALUE || width > MAX_VALUE
+						|| height > MAX_VALUE || pairs * 8L > MAX_VALUE))
+			throw new IllegalStateException(
+					"parameters exceed the legacy input format: use the extended format");
+		Random r = new Random(seed);
+		stream.write(format.header());
+		DeflaterOutputStream deflater = format == Format.DEFLATE ? new DeflaterOutputStream(
+				stream) : null;
+		DataOutputStream out = new DataOutputStream(deflater != null ? deflater
+				: stream);
+		writeValue(out, tests);
+		for (int t = 0; t < tests; t++)
+			writeTest(out, r);
+		out.flush();
+		if (deflater != null)
+			deflater.finish(); // lo stream viene chiuso dal chiamante
+	}
+
+	/**
+	 * Genera un caso test
+	 *
+	 * @param out
+	 *            lo stream di output
+	 * @param r
+	 *            il generatore casuale
+	 * @throws IOException
+	 */
+	private void writeTest(DataOutputStream out, Random r) throws IOException {
+		// 0 libera, 1 occupata da un elemento (contorno o interno), 2 piedino
+		byte[] cells = new byte[width * height];
+		List<int[]> rects = placeElements(cells, r);
+		ByteArrayOutputStream figures = new ByteArrayOutputStream();
+		DataOutputStream fig = new DataOutputStream(figures);
+		for (int[] rect : rects)
+			writeContour(fig, rect);
+		ByteArrayOutputStream blk3 = new ByteArrayOutputStream();
+		DataOutputStream pins = new DataOutputStream(blk3);
+		int written = 0;
+		for (int p = 0; p < pairs; p++) {
+			int a = pin(cells, rects, r);
+			int b = pin(cells, rects, r);
+			if (a < 0 || b < 0)
+				break; // la griglia non ha piu' celle libere
+			writeValue(pins, a / height);
+			writeValue(pins, a % height);
+			writeValue(pins, b / height);
+			writeValue(pins, b % height);
+			written++;
+		}
+		if (format.isExtended()) {
+			// i blocchi sono preceduti dal numero di elementi invece che dalla loro lunghezza
+			writeVarint(out, width);
+			writeVarint(out, height);
+			writeVarint(out, rects.size());
+			figures.writeTo(out);
+			writeVarint(out, written);
+			blk3.writeTo(out);
+			return;
+		}
+		if (figures.size() > MAX_VALUE)
+			throw new IllegalStateException("figure block too large ("
+					+ figures.size() + " bytes): reduce the number of elements");
+		out.writeShort(width);
+		out.writeShort(height);
+		out.writeShort(figures.size());
+		out.writeShort(written * 8);
+		figures.writeTo(out);
+		blk3.writeTo(out);
+	}
+
+	/**
+	 * Dispone sulla griglia elementi rettangolari casuali, separati da almeno
+	 * {@link #GAP} celle, finche' non viene raggiunto il livello di
+	 * congestione o il numero massimo di elementi
+	 *
+	 * @param cells
+	 *            lo stato delle celle della griglia
+	 * @param r
+	 *            il generatore casuale
+	 * @return i rettangoli {x, y, w, h} degli elementi
+	 */
+	private List<int[]> placeElements(byte[] cells, Random r) {
+		List<int[]> rects = new ArrayList<int[]>();
+		long target = (long) (congestion * width * height);
+		long area = 0;
+		int attempts = 0;
+		while (rects.size() < elements && area < target
+				&& attempts++ < elements * 50) {
+			int w = minSize + r.nextInt(maxSize - minSize + 1);
+			int h = minSize + r.nextInt(maxSize - minSize + 1);
+			if (w > width - 2 || h > height - 2)
+				continue;
+			// lasciamo libero il bordo della griglia per i piedini
+			int x = 1 + r.nextInt(width - w - 1);
+			int y = 1 + r.nextInt(height - h - 1);
+			if (!free(cells, x - GAP, y - GAP, w + 2 * GAP, h + 2 * GAP))
+				continue;
+			for (int i = x; i < x + w; i++)
+				for (int j = y; j < y + h; j++)
+					cells[i * height + j] = 1;
+			rects.add(new int[] { x, y, w, h });
+			area += w * h;
+		}
+		return rects;
+	}
+
+	/**
+	 * @return true se nessuna cella del rettangolo indicato (limitato alla
+	 *         griglia) e' occupata da un elemento
+	 */
+	private boolean free(byte[] cells, int x, int y, int w, int h) {
+		for (int i = Math.max(0, x); i < Math.min(width, x + w); i++)
+			for (int j = Math.max(0, y); j < Math.min(height, y + h); j++)
+				if (cells[i * height + j] == 1)
+					return false;
+		return true;
+	}
+
+	/**
+	 * Sceglie un piedino: una cella libera adiacente al contorno di un
+	 * elemento casuale, o una cella libera qualsiasi se non ci sono elementi
+	 *
+	 * @param cells
+	 *            lo stato delle celle della griglia
+	 * @param rects
+	 *            gli elementi
+	 * @param r
+	 *            il generatore casuale
+	 * @return l'indice x*h+y della cella scelta, -1 se non ne e' stata
+	 *         trovata una
+	 */
+	private int pin(byte[] cells, List<int[]> rects, Random r) {
+		for (int attempt = 0; attempt < 1000; attempt++) {
+			int x, y;
+			if (rects.isEmpty()) {
+				x = r.nextInt(width);
+				y = r.nextInt(height);
+			} else {
+				int[] e = rects.get(r.nextInt(rects.size()));
+				// scegliamo un lato e una posizione lungo di esso, appena fuori dal contorno
+				switch (r.nextInt(4)) {
+				case 0:
+					x = e[0] - 1;
+					y = e[1] + r.nextInt(e[3]);
+					break;
+				case 1:
+					x = e[0] + r.nextInt(e[2]);
+					y = e[1] - 1;
+					break;
+				case 2:
+					x = e[0] + r.nextInt(e[2]);
+					y = e[1] + e[3];
+					break;
+				default:
+					x = e[0] + e[2];
+					y = e[1] + r.nextInt(e[3]);
+				}
+			}
+			if (x < 0 || y < 0 || x >= width || y >= height
+					|| cells[x * height + y] != 0)
+				continue;
+			cells[x * height + y] = 2;
+			return x * height + y;
+		}
+		return -1;
+	}
+
+	/**
+	 * Codifica il contorno di un elemento: le coordinate dell'angolo in alto a
+	 * sinistra seguite dai lati percorsi in senso orario, come sequenze di al
+	 * piu' {@link #MAX_RUN} nodi nella stessa direzione (senza limite nel
+	 * formato esteso), e dal byte terminatore
+	 *
+	 * @param out
+	 *            lo stream del blocco delle figure
+	 * @param rect
+	 *            il rettangolo {x, y, w, h}
+	 * @throws IOException
+	 */
+	private void writeContour(DataOutputStream out, int[] rect)
+			throws IOException {
+		int w = rect[2], h = rect[3];
+		writeValue(out, rect[0]);
+		writeValue(out, rect[1]);
+		writeRun(out, Direction.RIGHT_CENTER, w - 1);
+		writeRun(out, Direction.CENTER_DOWN, h - 1);
+		writeRun(out, Direction.LEFT_CENTER, w - 1);
+		writeRun(out, Direction.CENTER_UP, h - 2); // l'angolo di partenza e' gia' stato codificato
+		out.writeByte(0);
+	}
+
+	/**
+	 * Codifica k nodi in direzione d, spezzandoli in piu' byte se necessario
+	 */
+	private void writeRun(DataOutputStream out, Direction d, int k)
+			throws IOException {
+		if (format.isExtended()) {
+			if (k > 0)
+				writeVarint(out, k << 3 | d.ordinal());
+			return;
+		}
+		while (k > 0) {
+			int n = Math.min(k, MAX_RUN);
+			out.writeByte(n << 3 | d.ordinal());
+			k -= n;
+		}
+	}
+
+	/**
+	 * Scrive una coordinata o un contatore: due byte nel formato originale,
+	 * un valore a lunghezza variabile in quello esteso
+	 */
+	private void writeValue(DataOutputStream out, int v) throws IOException {
+		if (format.isExtended())
+			writeVarint(out, v);
+		else
+			out.writeShort(v);
+	}
+
+	/**
+	 * Scrive un intero non negativo codificato a lunghezza variabile (7 bit
+	 * per byte, a partire dai meno significativi)
+	 */
+	private static void writeVarint(DataOutputStream out, int v)
+			throws IOException {
+		while ((v & ~0x7F) != 0) {
+			out.writeByte(v & 0x7F | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+}
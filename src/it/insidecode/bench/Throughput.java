@@ -0,0 +1,150 @@
+package it.insidecode.bench;
+
+import it.insidecode.core.RoutingOptions;
+import it.insidecode.parser.InputParser;
+import it.insidecode.parser.OutputParser;
+import it.insidecode.parser.ParsingException;
+import it.insidecode.parser.Sequence;
+import it.insidecode.parser.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+
+/**
+ * Benchmark end-to-end: legge un file di input, esegue tutti i casi test e ne
+ * codifica i risultati, misurando separatamente il tempo di lettura, di
+ * ricerca e di codifica. Riporta il numero di coppie collegate al secondo, il
+ * numero di nodi espansi dal router al secondo e il picco di memoria heap
+ * occupata. I casi test sono eseguiti in sequenza sul thread corrente, in modo
+ * che le misure non dipendano dal numero di processori.
+ * <p>
+ * Uso: {@code Throughput [-radix] [-astar] [-bidir] [-hier] [-delta] [-speculative] [-compact] [-offheap] [opzioni di InputGenerator] [file]}:
+ * se il file di input non e' indicato ne viene generato uno temporaneo con
+ * {@link InputGenerator}.
+ *
+ * @author fscozzafava
+ *
+ */
+public class Throughput {
+
+	public static void main(String[] args) throws IOException, ParsingException {
+		RoutingOptions options = new RoutingOptions();
+		InputGenerator gen = new InputGenerator();
+		String input = null;
+		for (int i = 0; i < args.length; i++) {
+			String s = args[i];
+			if (s.equals("-radix"))
+				options.setQueue(RoutingOptions.Queue.RADIX);
+			else if (s.equals("-astar"))
+				options.setSearch(RoutingOptions.Search.ASTAR);
+			else if (s.equals("-bidir"))
+				options.setSearch(RoutingOptions.Search.BIDIRECTIONAL);
+			else if (s.equals("-hier"))
+				options.setSearch(RoutingOptions.Search.HIERARCHICAL);
+			else if (s.equals("-delta"))
+				options.setSearch(RoutingOptions.Search.DELTA_STEPPING);
+			else if (s.equals("-speculative"))
+				options.setSpeculativeThreads(Runtime.getRuntime()
+						.availableProcessors());
+			else if (s.equals("-compact"))
+				options.setLayout(RoutingOptions.Layout.COMPACT);
+			else if (s.equals("-offheap"))
+				options.setStorage(RoutingOptions.Storage.OFF_HEAP);
+			else {
+				int next = gen.configure(args, i);
+				if (next < 0)
+					input = s;
+				else
+					i = next;
+			}
+		}
+		File generated = null;
+		if (input == null) {
+			generated = File.createTempFile("input", ".bin");
+			generated.deleteOnExit();
+			gen.write(generated.getPath());
+			input = generated.getPath();
+		}
+		File output = File.createTempFile("output", ".bin");
+		output.deleteOnExit();
+		try {
+			run(input, output.getPath(), options);
+		} finally {
+			output.delete();
+			if (generated != null)
+				generated.delete();
+		}
+	}
+
+	/**
+	 * Esegue il benchmark e ne stampa i risultati
+	 *
+	 * @param input
+	 *            il file di input
+	 * @param output
+	 *            il file su cui scrivere i risultati
+	 * @param options
+	 *            le opzioni del router
+	 * @throws IOException
+	 * @throws ParsingException
+	 */
+	public static void run(String input, String output, RoutingOptions options)
+			throws IOException, ParsingException {
+		List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+		for (MemoryPoolMXBean p : pools)
+			p.resetPeakUsage();
+		long parse = 0, route = 0, encode = 0;
+		long tests = 0, pairs = 0, routed = 0, settled = 0;
+		InputParser ip = new InputParser();
+		OutputParser op = null;
+		try {
+			ip.open(input);
+			op = new OutputParser(output, ip.getFormat());
+			while (ip.hasNext()) {
+				long start = System.nanoTime();
+				Test t = ip.next();
+				t.setOptions(options);
+				long parsed = System.nanoTime();
+				List<Sequence> res = t.run();
+				long run = System.nanoTime();
+				op.parse(res);
+				long end = System.nanoTime();
+				parse += parsed - start;
+				route += run - parsed;
+				encode += end - run;
+				tests++;
+				pairs += res.size();
+				for (Sequence s : res)
+					if (s.size() > 0)
+						routed++;
+				settled += t.getSettled();
+			}
+		} finally {
+			ip.close();
+			if (op != null)
+				op.close();
+		}
+		long peak = 0;
+		for (MemoryPoolMXBean p : pools)
+			if (p.getType() == MemoryType.HEAP)
+				peak += p.getPeakUsage().getUsed();
+		double total = (parse + route + encode) / 1e9;
+		System.out.printf("input         %s (%d bytes, %s)%n", input, new File(
+				input).length(), ip.getFormat());
+		System.out.printf("options       queue=%s search=%s layout=%s storage=%s%n",
+				options.getQueue(), options.getSearch(), options.getLayout(),
+				options.getStorage());
+		System.out.printf("tests         %d%n", tests);
+		System.out.printf("pairs         %d (%d routed)%n", pairs, routed);
+		System.out.printf("settled nodes %d%n", settled);
+		System.out.printf("time          %.3f s (parse %.3f, route %.3f, encode %.3f)%n",
+				total, parse / 1e9, route / 1e9, encode / 1e9);
+		System.out.printf("throughput    %.1f pairs/s, %.0f settled nodes/s%n",
+				pairs / total, settled / (route / 1e9));
+		System.out.printf("peak heap     %.1f MB%n", peak / (1024.0 * 1024.0));
+	}
+}
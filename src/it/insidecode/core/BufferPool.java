@@ -0,0 +1,279 @@
+package it.insidecode.core;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool degli array di grandi dimensioni usati da {@link Graph} e
+ * {@link Router}, che permette a casi test consecutivi di riutilizzare la
+ * memoria gia' allocata invece di richiederne di nuova (e di affidarsi al
+ * garbage collector per liberare quella dei casi test precedenti). Gli array
+ * sono indicizzati per lunghezza: una richiesta viene soddisfatta dal piu'
+ * piccolo array disponibile di lunghezza sufficiente, purche' non superi il
+ * doppio di quella richiesta, cosi' che gli array piu' grandi restino
+ * disponibili per i casi test piu' grandi. Il contenuto di un array preso dal
+ * pool non e' specificato: chi lo riceve deve inizializzarlo.
+ * <p>
+ * Gli array inutilizzati sono mantenuti tramite {@link SoftReference}, per
+ * cui il garbage collector puo' comunque liberarli se la memoria scarseggia,
+ * e la memoria complessivamente trattenuta e' limitata. Il pool puo' essere
+ * condiviso tra thread.
+ *
+ * @author fscozzafava
+ *
+ */
+public class BufferPool {
+
+	/**
+	 * Pool che non trattiene alcun array: ogni richiesta alloca un nuovo
+	 * array
+	 */
+	public static final BufferPool NONE = new BufferPool(0);
+
+	/**
+	 * Array inutilizzati di tipo int[], indicizzati per lunghezza
+	 */
+	private TreeMap<Integer, ArrayDeque<SoftReference<int[]>>> ints = new TreeMap<Integer, ArrayDeque<SoftReference<int[]>>>();
+
+	/**
+	 * Array inutilizzati di tipo long[], indicizzati per lunghezza
+	 */
+	private TreeMap<Integer, ArrayDeque<SoftReference<long[]>>> longs = new TreeMap<Integer, ArrayDeque<SoftReference<long[]>>>();
+
+	/**
+	 * Array inutilizzati di tipo short[], indicizzati per lunghezza
+	 */
+	private TreeMap<Integer, ArrayDeque<SoftReference<short[]>>> shorts = new TreeMap<Integer, ArrayDeque<SoftReference<short[]>>>();
+
+	/**
+	 * Array inutilizzati di tipo byte[], indicizzati per lunghezza
+	 */
+	private TreeMap<Integer, ArrayDeque<SoftReference<byte[]>>> bytes = new TreeMap<Integer, ArrayDeque<SoftReference<byte[]>>>();
+
+	/**
+	 * Memoria massima trattenuta dal pool, in byte
+	 */
+	private long maxBytes;
+
+	/**
+	 * Memoria trattenuta dal pool, in byte (stima per eccesso: non tiene
+	 * conto degli array liberati dal garbage collector)
+	 */
+	private long retained;
+
+	/**
+	 * Un nuovo {@link BufferPool} che trattiene al piu' un quarto dello heap
+	 * massimo della JVM
+	 */
+	public BufferPool() {
+		this(Runtime.getRuntime().maxMemory() / 4);
+	}
+
+	/**
+	 * Un nuovo {@link BufferPool}
+	 *
+	 * @param maxBytes
+	 *            la memoria massima trattenuta dal pool, in byte
+	 */
+	public BufferPool(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param length
+	 *            la lunghezza minima
+	 * @return un array di almeno length elementi, dal contenuto non
+	 *         specificato
+	 */
+	public synchronized int[] takeInts(int length) {
+		int[] a = take(ints, length, 4);
+		return a != null ? a : new int[length];
+	}
+
+	/**
+	 * @param length
+	 *            la lunghezza minima
+	 * @return un array di almeno length elementi, dal contenuto non
+	 *         specificato
+	 */
+	public synchronized long[] takeLongs(int length) {
+		long[] a = take(longs, length, 8);
+		return a != null ? a : new long[length];
+	}
+
+	/**
+	 * @param length
+	 *            la lunghezza minima
+	 * @return un array di almeno length elementi, dal contenuto non
+	 *         specificato
+	 */
+	public synchronized short[] takeShorts(int length) {
+		short[] a = take(shorts, length, 2);
+		return a != null ? a : new short[length];
+	}
+
+	/**
+	 * @param length
+	 *            la lunghezza minima
+	 * @return un array di almeno length elementi, dal contenuto non
+	 *         specificato
+	 */
+	public synchronized byte[] takeBytes(int length) {
+		byte[] a = take(bytes, length, 1);
+		return a != null ? a : new byte[length];
+	}
+
+	/**
+	 * Restituisce un array al pool. L'array non deve piu' essere usato da chi
+	 * lo restituisce
+	 *
+	 * @param a
+	 *            l'array
+	 */
+	public synchronized void give(int[] a) {
+		if (a != null && fit(a.length * 4L))
+			put(ints, a.length, new SoftReference<int[]>(a));
+	}
+
+	/**
+	 * Restituisce un array al pool. L'array non deve piu' essere usato da chi
+	 * lo restituisce
+	 *
+	 * @param a
+	 *            l'array
+	 */
+	public synchronized void give(long[] a) {
+		if (a != null && fit(a.length * 8L))
+			put(longs, a.length, new SoftReference<long[]>(a));
+	}
+
+	/**
+	 * Restituisce un array al pool. L'array non deve piu' essere usato da chi
+	 * lo restituisce
+	 *
+	 * @param a
+	 *            l'array
+	 */
+	public synchronized void give(short[] a) {
+		if (a != null && fit(a.length * 2L))
+			put(shorts, a.length, new SoftReference<short[]>(a));
+	}
+
+	/**
+	 * Restituisce un array al pool. L'array non deve piu' essere usato da chi
+	 * lo restituisce
+	 *
+	 * @param a
+	 *            l'array
+	 */
+	public synchronized void give(byte[] a) {
+		if (a != null && fit(a.length))
+			put(bytes, a.length, new SoftReference<byte[]>(a));
+	}
+
+	/**
+	 * Svuota il pool
+	 */
+	public synchronized void clear() {
+		ints.clear();
+		longs.clear();
+		shorts.clear();
+		bytes.clear();
+		retained = 0;
+	}
+
+	/**
+	 * @return la memoria trattenuta dal pool, in byte
+	 */
+	public synchronized long getRetainedBytes() {
+		return retained;
+	}
+
+	/**
+	 * Cerca l'array piu' piccolo di almeno length elementi e non piu' del
+	 * doppio, scartando quelli gia' liberati dal garbage collector
+	 *
+	 * @param pool
+	 * @param length
+	 * @param size
+	 *            la dimensione in byte di un elemento
+	 * @return l'array trovato, null se non ce ne sono
+	 */
+	private <T> T take(TreeMap<Integer, ArrayDeque<SoftReference<T>>> pool,
+			int length, int size) {
+		long max = Math.min(Integer.MAX_VALUE, 2L * length);
+		Iterator<Map.Entry<Integer, ArrayDeque<SoftReference<T>>>> i = pool
+				.tailMap(length, true).entrySet().iterator();
+		while (i.hasNext()) {
+			Map.Entry<Integer, ArrayDeque<SoftReference<T>>> e = i.next();
+			if (e.getKey() > max)
+				break;
+			ArrayDeque<SoftReference<T>> q = e.getValue();
+			while (!q.isEmpty()) {
+				retained -= (long) e.getKey() * size;
+				T a = q.poll().get();
+				if (a != null) {
+					if (q.isEmpty())
+						i.remove();
+					return a;
+				}
+			}
+			i.remove();
+		}
+		return null;
+	}
+
+	private <T> void put(TreeMap<Integer, ArrayDeque<SoftReference<T>>> pool,
+			int length, SoftReference<T> ref) {
+		ArrayDeque<SoftReference<T>> q = pool.get(length);
+		if (q == null)
+			pool.put(length, q = new ArrayDeque<SoftReference<T>>());
+		q.push(ref);
+	}
+
+	/**
+	 * Verifica che un array di n byte possa essere trattenuto, liberando se
+	 * necessario gli array piu' piccoli
+	 *
+	 * @param n
+	 *            la dimensione dell'array in byte
+	 * @return true se l'array puo' essere trattenuto
+	 */
+	private boolean fit(long n) {
+		// un pool senza memoria (come NONE) non trattiene nulla, e gli array
+		// vuoti non contano nel limite: trattenerli farebbe crescere il pool
+		// senza limite
+		if (maxBytes == 0 || n == 0 || n > maxBytes)
+			return false;
+		while (retained + n > maxBytes) {
+			// rilasciamo per primi gli array piu' piccoli, il cui riutilizzo fa risparmiare meno
+			if (!evictSmallest(ints, 4) & !evictSmallest(longs, 8)
+					& !evictSmallest(shorts, 2) & !evictSmallest(bytes, 1))
+				break;
+		}
+		if (retained + n > maxBytes)
+			return false;
+		retained += n;
+		return true;
+	}
+
+	/**
+	 * Rilascia uno degli array piu' piccoli del pool indicato
+	 *
+	 * @return true se e' stato rilasciato un array
+	 */
+	private <T> boolean evictSmallest(
+			TreeMap<Integer, ArrayDeque<SoftReference<T>>> pool, int size) {
+		Map.Entry<Integer, ArrayDeque<SoftReference<T>>> e = pool.firstEntry();
+		if (e == null)
+			return false;
+		e.getValue().pollLast();
+		retained -= (long) e.getKey() * size;
+		if (e.getValue().isEmpty())
+			pool.remove(e.getKey());
+		return true;
+	}
+}
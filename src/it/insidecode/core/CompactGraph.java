@@ -0,0 +1,504 @@
+package it.insidecode.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Rappresentazione compatta del grafo a griglia. La struttura del grafo e'
+ * completamente regolare: ogni {@code node} e' collegato al piu' agli altri
+ * tre {@code node} del proprio {@code BigNode} e al {@code node} opposto del
+ * {@code BigNode} adiacente nella sua direzione. Invece di memorizzare
+ * esplicitamente le liste di adiacenza, come fa {@link Graph}, per ogni
+ * {@code BigNode} sono mantenuti solo 10 bit di stato:
+ * <ul>
+ * <li>bit 0-3: quali dei quattro {@code node} (nell'ordine WNSE) esistono
+ * ancora</li>
+ * <li>bit 4-7: quali dei quattro archi diagonali (W-N, W-S, N-E, S-E) non
+ * sono stati rimossi</li>
+ * <li>bit 8-9: quali dei due archi dritti (W-E, N-S) hanno il peso
+ * aumentato di {@link Graph#INTERSECTION}</li>
+ * </ul>
+ * Gli archi dritti e quelli tra {@code BigNode} adiacenti esistono se e solo
+ * se esistono entrambi i loro estremi, e gli indici degli adiacenti sono
+ * ricavati aritmeticamente. Il grafo occupa cosi' 2 byte per {@code BigNode}
+ * invece degli 80 di {@link Graph}, e puo' avere fino a
+ * {@link Integer#MAX_VALUE} {@code node} invece di {@link Graph#MAX_NODES}.
+ * Lo stato puo' essere mantenuto in un array nello heap o in un buffer diretto
+ * esterno allo heap ({@link RoutingOptions.Storage#OFF_HEAP}), liberato da
+ * {@link #release()}.
+ * <p>
+ * Sono supportate le sole modifiche effettuate dal {@link Router}: gli
+ * adiacenti di un {@code node} sono restituiti nell'ordine in cui
+ * {@link Graph} li crea, per cui i due grafi scelgono allo stesso modo tra
+ * cammini di costo uguale finche' non vengono rimossi nodi.
+ *
+ * @author fscozzafava
+ *
+ */
+public class CompactGraph implements GridGraph {
+
+	/**
+	 * Bit dell'arco interno tra i {@code node} di direzione a e b (indicizzato
+	 * da {@code a * 4 + b}): per gli archi diagonali indica la presenza
+	 * dell'arco, per quelli dritti l'incremento di
+	 * {@link Graph#INTERSECTION}
+	 */
+	private static final int[] EDGE_BIT = new int[16];
+
+	/**
+	 * Per ogni direzione, le direzioni degli altri {@code node} del
+	 * {@code BigNode} nell'ordine in cui {@link Graph} crea gli archi
+	 */
+	private static final int[][] ORDER = { { 1, 2, 3 }, { 0, 2, 3 },
+			{ 1, 0, 3 }, { 2, 1, 0 } };
+
+	/**
+	 * Bit degli archi diagonali
+	 */
+	private static final int DIAGONALS = 0xF0;
+
+	/**
+	 * Bit dei {@code node} esistenti
+	 */
+	private static final int NODES = 0xF;
+
+	static {
+		int[][] pairs = { { 0, 1 }, { 0, 2 }, { 1, 3 }, { 2, 3 }, { 0, 3 },
+				{ 1, 2 } };
+		for (int i = 0; i < pairs.length; i++) {
+			EDGE_BIT[pairs[i][0] * 4 + pairs[i][1]] = 1 << (4 + i);
+			EDGE_BIT[pairs[i][1] * 4 + pairs[i][0]] = 1 << (4 + i);
+		}
+	}
+
+	private int width;
+	private int height;
+
+	/**
+	 * Numero di nodi ({@code node}) del grafo
+	 */
+	private int size;
+
+	/**
+	 * Bit di stato dei {@code BigNode}
+	 */
+	private ShortBuffer state;
+
+	/**
+	 * Buffer diretto su cui e' costruito {@link #state}, null se lo stato e'
+	 * nello heap
+	 */
+	private ByteBuffer direct;
+
+	/**
+	 * Differenza tra l'indice di un {@code node} e quello del {@code node}
+	 * adiacente nel {@code BigNode} vicino, per ogni direzione
+	 */
+	private int[] external;
+
+	/**
+	 * Pool da cui proviene l'array {@link #state}
+	 */
+	private BufferPool pool = BufferPool.NONE;
+
+	/**
+	 * Numero di modifiche apportate al grafo
+	 */
+	private long version;
+
+	/**
+	 * Se true il grafo non puo' piu' essere modificato
+	 */
+	private boolean frozen;
+
+	/**
+	 * Registro delle modifiche, null se non e' attivo
+	 */
+	private Journal journal;
+
+	/**
+	 * Istanzia un nuovo grafo
+	 *
+	 * @param width
+	 *            larghezza della griglia
+	 * @param height
+	 *            altezza della griglia
+	 */
+	public CompactGraph(int width, int height) {
+		this(width, height, BufferPool.NONE);
+	}
+
+	/**
+	 * Istanzia un nuovo grafo prendendo dal pool indicato l'array in cui e'
+	 * mantenuto
+	 *
+	 * @param width
+	 *            larghezza della griglia
+	 * @param height
+	 *            altezza della griglia
+	 * @param pool
+	 *            il pool degli array
+	 */
+	public CompactGraph(int width, int height, BufferPool pool) {
+		this(width, height, pool, RoutingOptions.Storage.HEAP);
+	}
+
+	/**
+	 * Istanzia un nuovo grafo mantenuto nella memoria indicata
+	 *
+	 * @param width
+	 *            larghezza della griglia
+	 * @param height
+	 *            altezza della griglia
+	 * @param pool
+	 *            il pool degli array, se il grafo e' mantenuto nello heap
+	 * @param storage
+	 *            dove mantenere il grafo
+	 */
+	public CompactGraph(int width, int height, BufferPool pool,
+			RoutingOptions.Storage storage) {
+		if ((long) width * height * 4 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("grid " + width + "x" + height
+					+ " is too large");
+		this.width = width;
+		this.height = height;
+		this.pool = pool;
+		size = width * height * 4;
+		external = new int[] { -4 * height + 3, -3, 3, 4 * height - 3 };
+		if (storage == RoutingOptions.Storage.OFF_HEAP) {
+			direct = DirectBuffers.allocate(width * height * 2);
+			state = direct.asShortBuffer();
+		} else
+			state = ShortBuffer.wrap(pool.takeShorts(width * height));
+		for (int x = 0; x < width; x++) {
+			// esistono solo i node che non si affacciano sul bordo della griglia
+			int column = DIAGONALS | (x > 0 ? 1 : 0) | (x < width - 1 ? 8 : 0);
+			for (int y = 0; y < height; y++)
+				state.put(x * height + y, (short) (column | (y > 0 ? 2 : 0) | (y < height - 1 ? 4
+						: 0)));
+		}
+	}
+
+	/**
+	 * Istanzia una copia del grafo indicato: le modifiche apportate alla copia
+	 * non si riflettono sull'originale
+	 *
+	 * @param other
+	 *            il grafo da copiare
+	 */
+	public CompactGraph(CompactGraph other) {
+		width = other.width;
+		height = other.height;
+		size = other.size;
+		external = other.external;
+		state = ShortBuffer.allocate(width * height);
+		copyFrom(other);
+	}
+
+	/**
+	 * Istanzia un grafo che legge lo stato indicato senza copiarlo, per le
+	 * sottoclassi che mantengono altrove le proprie modifiche
+	 *
+	 * @param width
+	 *            larghezza della griglia
+	 * @param height
+	 *            altezza della griglia
+	 * @param state
+	 *            lo stato dei {@code BigNode}
+	 */
+	CompactGraph(int width, int height, ShortBuffer state) {
+		this.width = width;
+		this.height = height;
+		this.state = state;
+		size = width * height * 4;
+		external = new int[] { -4 * height + 3, -3, 3, 4 * height - 3 };
+	}
+
+	/**
+	 * Riporta il grafo allo stato del grafo indicato, che deve avere le stesse
+	 * dimensioni, senza allocare memoria
+	 *
+	 * @param other
+	 *            il grafo da copiare
+	 */
+	public void copyFrom(CompactGraph other) {
+		if (other.width != width || other.height != height)
+			throw new IllegalArgumentException("graph sizes differ");
+		if (frozen)
+			throw new IllegalStateException("graph is frozen");
+		if (journal != null)
+			throw new IllegalStateException("cannot copy into a journaled graph");
+		ShortBuffer src = other.state.duplicate();
+		src.clear();
+		src.limit(width * height);
+		ShortBuffer dst = state.duplicate();
+		dst.clear();
+		dst.put(src);
+		other.copyChangesTo(this);
+		version++;
+	}
+
+	/**
+	 * Scrive nel grafo indicato le modifiche che non sono mantenute nello
+	 * stato {@link #state}: il grafo di base non ne ha
+	 *
+	 * @param other
+	 *            il grafo in cui e' appena stato copiato lo stato
+	 */
+	void copyChangesTo(CompactGraph other) {
+	}
+
+	/**
+	 * Impedisce ogni ulteriore modifica del grafo, che da questo momento puo'
+	 * essere letto da piu' thread contemporaneamente e fare da base ad
+	 * {@link OverlayGraph}
+	 */
+	public void freeze() {
+		frozen = true;
+	}
+
+	/**
+	 * @return true se il grafo non puo' piu' essere modificato
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Attiva, se necessario, il registro delle modifiche e ritorna un punto di
+	 * salvataggio dello stato attuale del grafo, a cui e' possibile tornare con
+	 * {@link #rollback(int)} in tempo proporzionale alle modifiche apportate
+	 * nel frattempo. I punti di salvataggio possono essere annidati.
+	 *
+	 * @return il punto di salvataggio
+	 */
+	public int savepoint() {
+		if (journal == null)
+			journal = new Journal();
+		return journal.savepoint();
+	}
+
+	/**
+	 * Annulla tutte le modifiche apportate al grafo dopo il punto di
+	 * salvataggio indicato, compresi quelli successivi, che non sono piu'
+	 * validi
+	 *
+	 * @param savepoint
+	 *            un punto di salvataggio restituito da {@link #savepoint()}
+	 * @throws IllegalArgumentException
+	 *             se il punto di salvataggio non e' valido
+	 */
+	public void rollback(int savepoint) {
+		if (journal == null)
+			throw new IllegalArgumentException("unknown savepoint " + savepoint);
+		journal.check(savepoint);
+		for (int i = journal.savepoint() - 1; i >= savepoint; i--)
+			store(journal.index(i), (short) journal.old(i));
+		journal.truncate(savepoint);
+		version++;
+	}
+
+	/**
+	 * Rende definitive le modifiche apportate al grafo disattivando il
+	 * registro: i punti di salvataggio non sono piu' validi
+	 */
+	public void clearJournal() {
+		journal = null;
+	}
+
+	/**
+	 * @return true se il registro delle modifiche e' attivo
+	 */
+	public boolean isJournaling() {
+		return journal != null;
+	}
+
+	/**
+	 * @return lo stato dei {@code BigNode} in sola lettura
+	 */
+	ShortBuffer readOnlyState() {
+		return state.asReadOnlyBuffer();
+	}
+
+	@Override
+	public void release() {
+		if (direct != null)
+			DirectBuffers.free(direct);
+		else
+			pool.give(state.array());
+		state = null;
+		direct = null;
+		journal = null;
+	}
+
+	@Override
+	public long getVersion() {
+		return version;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public boolean exists(int node) {
+		return node < size && (bits(node >> 2) >> (node & 3) & 1) != 0;
+	}
+
+	@Override
+	public boolean existsBig(int node) {
+		return node < size && (bits(node >> 2) & NODES) != 0;
+	}
+
+	@Override
+	public int adjacents(int node, int[] nodes, long[] weights) {
+		int s = bits(node >> 2);
+		int side = node & 3;
+		if ((s >> side & 1) == 0)
+			return 0;
+		int base = node & 0xFFFFFFFC;
+		int count = 0;
+		for (int other : ORDER[side]) {
+			int raw = internal(s, side, other);
+			if (raw != 0) {
+				nodes[count] = base + other;
+				weights[count++] = Graph.decodeWeight(raw);
+			}
+		}
+		int next = node + external[side];
+		if (exists(next)) {
+			nodes[count] = next;
+			weights[count++] = Graph.decodeWeight(Graph.LENGHT);
+		}
+		return count;
+	}
+
+	@Override
+	public long getWeight(int nodeA, int nodeB) {
+		return Graph.decodeWeight(getWeightRaw(nodeA, nodeB));
+	}
+
+	@Override
+	public int getWeightRaw(int nodeA, int nodeB) {
+		if (!exists(nodeA))
+			throw new IllegalArgumentException("nodeA is not in the graph!");
+		if (!exists(nodeB))
+			throw new IllegalArgumentException("nodeB is not in the graph!");
+		if (nodeA >> 2 == nodeB >> 2)
+			return nodeA == nodeB ? 0 : internal(bits(nodeA >> 2), nodeA & 3,
+					nodeB & 3);
+		return nodeB == nodeA + external[nodeA & 3] ? Graph.LENGHT : 0;
+	}
+
+	/**
+	 * Solo gli archi dritti interni ad un {@code BigNode} possono essere
+	 * incrementati (di {@link Graph#INTERSECTION}): gli altri pesi non sono
+	 * rappresentabili
+	 *
+	 * @throws UnsupportedOperationException
+	 *             se il peso risultante non e' rappresentabile
+	 */
+	@Override
+	public void increaseWeight(int nodeA, int nodeB, int weight) {
+		if (!exists(nodeA) || !exists(nodeB))
+			return; // non esiste l'arco da incrementare perche gia rimosso in
+					// precedenza, ritorno
+		int raw = getWeightRaw(nodeA, nodeB);
+		if (raw == 0 || (raw | weight) == raw)
+			return; // arco inesistente o peso invariato
+		if ((nodeA & 3) + (nodeB & 3) != 3 || nodeA >> 2 != nodeB >> 2
+				|| (raw | weight) != (Graph.LENGHT | Graph.INTERSECTION))
+			throw new UnsupportedOperationException(
+					"edge weight not representable in a compact graph");
+		update(nodeA >> 2, EDGE_BIT[(nodeA & 3) * 4 + (nodeB & 3)], 0);
+	}
+
+	@Override
+	public void removeNode(int node) {
+		update(node >> 2, 0, 1 << (node & 3));
+	}
+
+	@Override
+	public void removeBigNode(int node) {
+		update(node >> 2, 0, NODES);
+	}
+
+	@Override
+	public void removeDiagonalEdges(int node) {
+		update(node >> 2, 0, DIAGONALS);
+	}
+
+	/**
+	 * Imposta e azzera i bit indicati dello stato di un {@code BigNode}
+	 *
+	 * @param big
+	 *            l'indice del {@code BigNode}
+	 * @param set
+	 *            i bit da impostare
+	 * @param clear
+	 *            i bit da azzerare
+	 */
+	private void update(int big, int set, int clear) {
+		if (frozen)
+			throw new IllegalStateException("graph is frozen");
+		int old = bits(big);
+		if (journal != null)
+			journal.record(big, old);
+		store(big, (short) (old & ~clear | set));
+		version++;
+	}
+
+	/**
+	 * Registra una modifica del grafo apportata senza {@link #store(int, short)}
+	 */
+	void modified() {
+		version++;
+	}
+
+	/**
+	 * @param big
+	 *            l'indice del {@code BigNode}
+	 * @return i bit di stato del {@code BigNode}
+	 */
+	int bits(int big) {
+		return state.get(big);
+	}
+
+	/**
+	 * Sostituisce i bit di stato di un {@code BigNode}
+	 *
+	 * @param big
+	 *            l'indice del {@code BigNode}
+	 * @param bits
+	 *            i nuovi bit di stato
+	 */
+	void store(int big, short bits) {
+		state.put(big, bits);
+	}
+
+	/**
+	 * Ritorna il peso dell'arco interno ad un {@code BigNode} tra i
+	 * {@code node} di direzione a e b (come 3 bit di controllo)
+	 *
+	 * @param s
+	 *            lo stato del {@code BigNode}
+	 * @param a
+	 * @param b
+	 * @return il peso, 0 se l'arco non esiste
+	 */
+	private static int internal(int s, int a, int b) {
+		if ((s >> a & s >> b & 1) == 0)
+			return 0; // uno dei due estremi non esiste
+		int bit = EDGE_BIT[a * 4 + b];
+		if (a + b == 3) // arco dritto
+			return (s & bit) != 0 ? Graph.LENGHT | Graph.INTERSECTION
+					: Graph.LENGHT;
+		return (s & bit) != 0 ? Graph.LENGHT | Graph.TURN : 0;
+	}
+}
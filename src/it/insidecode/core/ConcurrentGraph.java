@@ -0,0 +1,386 @@
+package it.insidecode.core;
+
+import it.insidecode.parser.IntSequence;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decoratore di un {@link GridGraph} che puo' essere letto e modificato da
+ * piu' thread contemporaneamente. La griglia e' suddivisa in tessere quadrate
+ * di {@code BigNode}, ognuna con un lock e un timbro di versione:
+ * <ul>
+ * <li>chi modifica un {@code BigNode} acquisisce i lock della sua tessera e
+ * di quelle dei {@code BigNode} vicini (le cui liste di adiacenza possono
+ * contenerne i {@code node}) in ordine crescente, rende dispari i loro timbri,
+ * applica la modifica e li rende di nuovo pari</li>
+ * <li>chi legge non acquisisce alcun lock: legge il timbro della tessera del
+ * {@code node} letto, esegue la lettura sul grafo decorato e la ripete se nel
+ * frattempo il timbro e' cambiato. Dal momento che ogni modifica aggiorna
+ * anche le tessere vicine, il timbro di una sola tessera basta a convalidare
+ * qualunque lettura relativa ad un {@code node} (compresi i suoi adiacenti)</li>
+ * </ul>
+ * Per tracciare un cammino senza che altri thread modifichino nel frattempo
+ * la regione che attraversa si acquisiscono i lock di tutte le tessere
+ * coinvolte con {@link #lock(IntSequence)}: una ricerca eseguita senza lock
+ * puo' cosi' confrontare i timbri ({@link #getStamp(int)}) delle tessere
+ * lette con quelli attuali prima di tracciare il proprio cammino.
+ * <p>
+ * La convalida di una lettura e' un compare-and-set che lascia invariato il
+ * timbro: e' l'unica barriera disponibile in Java 7 che impedisca di spostare
+ * le letture del grafo dopo il confronto.
+ * <p>
+ * I lock delle tessere proteggono solo lo stato dei singoli {@code BigNode}:
+ * il grafo decorato non puo' scrivere le modifiche in strutture condivise tra
+ * tessere diverse, per cui non sono ammessi un {@link OverlayGraph} (che le
+ * raccoglie in un'unica tabella) ne' un grafo con il registro delle
+ * modifiche attivo, che non deve essere attivato in seguito.
+ *
+ * @author fscozzafava
+ *
+ */
+public class ConcurrentGraph implements GridGraph {
+
+	/**
+	 * Il grafo decorato
+	 */
+	private GridGraph graph;
+
+	private int width;
+	private int height;
+
+	/**
+	 * Lato delle tessere in {@code BigNode}
+	 */
+	private int size;
+
+	/**
+	 * Numero di tessere lungo l'altezza della griglia
+	 */
+	private int rowsOfTiles;
+
+	/**
+	 * Lock e timbri delle tessere: un timbro dispari indica una modifica in
+	 * corso
+	 */
+	private ReentrantLock[] locks;
+	private AtomicLongArray stamps;
+
+	/**
+	 * Numero di modifiche apportate al grafo
+	 */
+	private AtomicLong version = new AtomicLong();
+
+	/**
+	 * Istanzia un grafo concorrente
+	 *
+	 * @param graph
+	 *            il grafo decorato, che non deve piu' essere usato
+	 *            direttamente
+	 * @param size
+	 *            il lato delle tessere in {@code BigNode}
+	 * @throws IllegalArgumentException
+	 *             se il grafo e' un {@link OverlayGraph} o ha il registro
+	 *             delle modifiche attivo
+	 */
+	public ConcurrentGraph(GridGraph graph, int size) {
+		if (size < 1)
+			throw new IllegalArgumentException("tile size must be positive");
+		if (graph instanceof OverlayGraph)
+			throw new IllegalArgumentException(
+					"an overlay session cannot be shared between threads");
+		if (graph instanceof Graph && ((Graph) graph).isJournaling()
+				|| graph instanceof CompactGraph
+				&& ((CompactGraph) graph).isJournaling())
+			throw new IllegalArgumentException(
+					"a journaling graph cannot be shared between threads");
+		this.graph = graph;
+		this.size = size;
+		width = graph.getWidth();
+		height = graph.getHeight();
+		rowsOfTiles = (height + size - 1) / size;
+		int tiles = (width + size - 1) / size * rowsOfTiles;
+		locks = new ReentrantLock[tiles];
+		for (int i = 0; i < tiles; i++)
+			locks[i] = new ReentrantLock();
+		stamps = new AtomicLongArray(tiles);
+	}
+
+	/**
+	 * @param node
+	 * @return la tessera che contiene il {@code BigNode} del nodo
+	 */
+	public int tileOf(int node) {
+		int big = node >> 2;
+		return big / height / size * rowsOfTiles + big % height / size;
+	}
+
+	/**
+	 * Ritorna il timbro di una tessera: finche' non cambia, le letture dei
+	 * {@code node} della tessera danno lo stesso risultato
+	 *
+	 * @param tile
+	 *            la tessera
+	 * @return il timbro, dispari se e' in corso una modifica
+	 */
+	public long getStamp(int tile) {
+		return stamps.get(tile);
+	}
+
+	/**
+	 * Acquisisce, in ordine crescente, i lock delle tessere dei
+	 * {@code BigNode} dei nodi indicati e di quelle dei loro vicini: finche'
+	 * non vengono rilasciati da {@link #unlock(int[])} nessun altro thread puo'
+	 * modificare quei {@code BigNode}, mentre il thread corrente puo' farlo
+	 * senza attendere altri lock
+	 *
+	 * @param nodes
+	 *            i nodi, ad esempio un cammino
+	 * @return le tessere acquisite, da passare a {@link #unlock(int[])}
+	 */
+	public int[] lock(IntSequence nodes) {
+		int[] tiles = new int[nodes.size() * 5];
+		int count = 0;
+		for (int i = 0; i < nodes.size(); i++)
+			count = region(nodes.get(i) >> 2, tiles, count);
+		tiles = distinct(tiles, count);
+		for (int t : tiles)
+			locks[t].lock();
+		return tiles;
+	}
+
+	/**
+	 * Rilascia i lock acquisiti da {@link #lock(IntSequence)}
+	 *
+	 * @param tiles
+	 *            le tessere acquisite
+	 */
+	public void unlock(int[] tiles) {
+		for (int i = tiles.length - 1; i >= 0; i--)
+			locks[tiles[i]].unlock();
+	}
+
+	@Override
+	public long getVersion() {
+		return version.get();
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public boolean exists(int node) {
+		int t = tileOf(node);
+		while (true) {
+			long s = begin(t);
+			try {
+				boolean res = graph.exists(node);
+				if (validate(t, s))
+					return res;
+			} catch (RuntimeException e) {
+				if (validate(t, s))
+					throw e;
+			}
+		}
+	}
+
+	@Override
+	public boolean existsBig(int node) {
+		int t = tileOf(node);
+		while (true) {
+			long s = begin(t);
+			try {
+				boolean res = graph.existsBig(node);
+				if (validate(t, s))
+					return res;
+			} catch (RuntimeException e) {
+				if (validate(t, s))
+					throw e;
+			}
+		}
+	}
+
+	@Override
+	public int adjacents(int node, int[] nodes, long[] weights) {
+		int t = tileOf(node);
+		while (true) {
+			long s = begin(t);
+			try {
+				int res = graph.adjacents(node, nodes, weights);
+				if (validate(t, s))
+					return res;
+			} catch (RuntimeException e) {
+				if (validate(t, s))
+					throw e;
+			}
+		}
+	}
+
+	@Override
+	public long getWeight(int nodeA, int nodeB) {
+		int t = tileOf(nodeA);
+		while (true) {
+			long s = begin(t);
+			try {
+				long res = graph.getWeight(nodeA, nodeB);
+				if (validate(t, s))
+					return res;
+			} catch (RuntimeException e) {
+				if (validate(t, s))
+					throw e;
+			}
+		}
+	}
+
+	@Override
+	public int getWeightRaw(int nodeA, int nodeB) {
+		int t = tileOf(nodeA);
+		while (true) {
+			long s = begin(t);
+			try {
+				int res = graph.getWeightRaw(nodeA, nodeB);
+				if (validate(t, s))
+					return res;
+			} catch (RuntimeException e) {
+				if (validate(t, s))
+					throw e;
+			}
+		}
+	}
+
+	@Override
+	public void increaseWeight(int nodeA, int nodeB, int weight) {
+		int[] tiles = acquire(nodeA >> 2, nodeB >> 2);
+		try {
+			graph.increaseWeight(nodeA, nodeB, weight);
+		} finally {
+			release(tiles);
+		}
+	}
+
+	@Override
+	public void removeNode(int node) {
+		int[] tiles = acquire(node >> 2, node >> 2);
+		try {
+			graph.removeNode(node);
+		} finally {
+			release(tiles);
+		}
+	}
+
+	@Override
+	public void removeBigNode(int node) {
+		int[] tiles = acquire(node >> 2, node >> 2);
+		try {
+			graph.removeBigNode(node);
+		} finally {
+			release(tiles);
+		}
+	}
+
+	@Override
+	public void removeDiagonalEdges(int node) {
+		int[] tiles = acquire(node >> 2, node >> 2);
+		try {
+			graph.removeDiagonalEdges(node);
+		} finally {
+			release(tiles);
+		}
+	}
+
+	@Override
+	public void release() {
+		graph.release();
+	}
+
+	/**
+	 * Attende che non siano in corso modifiche della tessera
+	 *
+	 * @return il timbro (pari) della tessera
+	 */
+	private long begin(int tile) {
+		long s;
+		while (((s = stamps.get(tile)) & 1) != 0)
+			Thread.yield();
+		return s;
+	}
+
+	/**
+	 * @return true se il timbro della tessera non e' cambiato dall'inizio
+	 *         della lettura
+	 */
+	private boolean validate(int tile, long stamp) {
+		return stamps.compareAndSet(tile, stamp, stamp);
+	}
+
+	/**
+	 * Acquisisce i lock delle regioni dei due {@code BigNode} e ne rende
+	 * dispari i timbri
+	 *
+	 * @return le tessere acquisite
+	 */
+	private int[] acquire(int bigA, int bigB) {
+		int[] tiles = new int[10];
+		int count = region(bigA, tiles, 0);
+		if (bigB != bigA)
+			count = region(bigB, tiles, count);
+		tiles = distinct(tiles, count);
+		for (int t : tiles) {
+			locks[t].lock();
+			stamps.incrementAndGet(t);
+		}
+		return tiles;
+	}
+
+	/**
+	 * Rende di nuovo pari i timbri delle tessere e ne rilascia i lock
+	 */
+	private void release(int[] tiles) {
+		version.incrementAndGet();
+		for (int i = tiles.length - 1; i >= 0; i--) {
+			stamps.incrementAndGet(tiles[i]);
+			locks[tiles[i]].unlock();
+		}
+	}
+
+	/**
+	 * Aggiunge all'array indicato le tessere del {@code BigNode} e dei suoi
+	 * vicini
+	 *
+	 * @return il nuovo numero di tessere nell'array
+	 */
+	private int region(int big, int[] tiles, int count) {
+		int x = big / height, y = big % height;
+		tiles[count++] = tileOf(big << 2);
+		if (x > 0)
+			tiles[count++] = tileOf(big - height << 2);
+		if (x < width - 1)
+			tiles[count++] = tileOf(big + height << 2);
+		if (y > 0)
+			tiles[count++] = tileOf(big - 1 << 2);
+		if (y < height - 1)
+			tiles[count++] = tileOf(big + 1 << 2);
+		return count;
+	}
+
+	/**
+	 * @return le prime count tessere dell'array, ordinate e senza ripetizioni
+	 */
+	private static int[] distinct(int[] tiles, int count) {
+		Arrays.sort(tiles, 0, count);
+		int n = 0;
+		for (int i = 0; i < count; i++)
+			if (n == 0 || tiles[i] != tiles[n - 1])
+				tiles[n++] = tiles[i];
+		return Arrays.copyOf(tiles, n);
+	}
+}
@@ -0,0 +1,116 @@
+package it.insidecode.core;
+
+/**
+ * Decoratore di una {@link NodeQueue} che conta le operazioni effettuate e la
+ * dimensione massima raggiunta. Il {@link Router} lo usa solo quando e'
+ * registrato un {@link RouterListener}, in modo che senza listener la coda sia
+ * usata direttamente.
+ * 
+ * @author fscozzafava
+ * 
+ */
+class CountingQueue implements NodeQueue {
+
+	private NodeQueue queue;
+	private long pushes;
+	private long decreases;
+	private long pops;
+	private int maxSize;
+
+	/**
+	 * @param queue
+	 *            la coda da decorare
+	 */
+	CountingQueue(NodeQueue queue) {
+		this.queue = queue;
+	}
+
+	/**
+	 * @return la coda decorata
+	 */
+	NodeQueue getQueue() {
+		return queue;
+	}
+
+	/**
+	 * Azzera i contatori
+	 */
+	void resetCounters() {
+		pushes = decreases = pops = 0;
+		maxSize = 0;
+	}
+
+	long getPushes() {
+		return pushes;
+	}
+
+	long getDecreases() {
+		return decreases;
+	}
+
+	long getPops() {
+		return pops;
+	}
+
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public boolean contains(int node) {
+		return queue.contains(node);
+	}
+
+	@Override
+	public void insert(int node, long key) {
+		queue.insert(node, key);
+		pushes++;
+		if (queue.size() > maxSize)
+			maxSize = queue.size();
+	}
+
+	@Override
+	public void decreaseKey(int node, long key) {
+		queue.decreaseKey(node, key);
+		decreases++;
+	}
+
+	@Override
+	public void offer(int node, long key) {
+		if (queue.contains(node))
+			decreaseKey(node, key);
+		else
+			insert(node, key);
+	}
+
+	@Override
+	public long minKey() {
+		return queue.minKey();
+	}
+
+	@Override
+	public int extractMin() {
+		pops++;
+		return queue.extractMin();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+
+	@Override
+	public void clear() {
+		queue.clear();
+	}
+
+	@Override
+	public void release() {
+		queue.release();
+	}
+}
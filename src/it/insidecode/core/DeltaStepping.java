@@ -0,0 +1,416 @@
+package it.insidecode.core;
+
+import it.insidecode.parser.IntSequence;
+
+import java.util.ArrayDeque;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ricerca del cammino di costo minimo con l'algoritmo Delta-stepping, che
+ * distribuisce su piu' thread i rilassamenti di una singola ricerca. I nodi
+ * sono raccolti in bucket di ampiezza {@code 2^SHIFT} in base alla distanza
+ * provvisoria; i bucket sono elaborati in ordine crescente e i nodi di uno
+ * stesso bucket in parallelo. Con l'ampiezza scelta i costi impacchettati
+ * ({@link Graph#getWeight(int, int)}) di uno stesso bucket hanno lo stesso
+ * numero di incroci e di svolte: gli archi leggeri sono quelli di sola
+ * lunghezza, rilassati a fasi finche' il bucket non si svuota, mentre quelli
+ * con una svolta o un incrocio portano sempre in un bucket successivo e sono
+ * rilassati una sola volta, al termine del bucket.
+ * <p>
+ * Durante una fase i thread leggono soltanto le distanze e scrivono le
+ * distanze candidate degli adiacenti in posizioni riservate a ciascun nodo
+ * della frontiera; al termine della fase un solo thread le confronta con
+ * quelle correnti e aggiorna le migliori. Le distanze sono quindi mantenute
+ * in un {@link SearchState} ordinario, che segue le opzioni di memoria del
+ * {@link Router} e si azzera in tempo costante, e i padri non vengono mai
+ * scritti durante la ricerca: al termine il cammino viene ricostruito
+ * a ritroso scegliendo per ogni nodo l'adiacente di indice minore la cui
+ * distanza sommata al peso dell'arco sia pari alla distanza del nodo. E' la
+ * stessa scelta dell'algoritmo di Dijkstra del {@link Router}, per cui i
+ * cammini trovati sono identici.
+ *
+ * @author fscozzafava
+ *
+ */
+class DeltaStepping {
+
+	/**
+	 * Logaritmo dell'ampiezza dei bucket: i bit di svolte e incroci
+	 */
+	private static final int SHIFT = 21;
+
+	/**
+	 * Numero di nodi sotto il quale una fase non viene suddivisa tra i thread
+	 */
+	private static final int GRAIN = 1024;
+
+	/**
+	 * Distanze provvisorie dei nodi. Il padre di ogni nodo, che la ricerca non
+	 * usa, registra l'ultima fase in cui il nodo e' stato elaborato, per non
+	 * elaborarlo due volte nella stessa fase: vale 0 quando la distanza viene
+	 * impostata
+	 */
+	private SearchState dist;
+
+	/**
+	 * Fase corrente, ripartita da 0 ad ogni ricerca
+	 */
+	private int phase;
+
+	/**
+	 * Bucket non ancora elaborati, per indice
+	 */
+	private TreeMap<Long, IntSequence> buckets = new TreeMap<Long, IntSequence>();
+
+	/**
+	 * Bucket gia' elaborati e svuotati, riusati per i successivi
+	 */
+	private ArrayDeque<IntSequence> spare = new ArrayDeque<IntSequence>();
+
+	/**
+	 * Frontiera dell'ultima fase, nelle prime {@link #frontierSize} posizioni
+	 */
+	private int[] frontier = new int[GRAIN];
+	private int frontierSize;
+
+	/**
+	 * Nodi elaborati nelle fasi leggere del bucket corrente
+	 */
+	private IntSequence settledInBucket = new IntSequence();
+
+	/**
+	 * Adiacenti (-1 per le posizioni inutilizzate) e distanze candidate
+	 * dell'ultima fase: le quattro posizioni a partire da {@code 4 * i} sono
+	 * riservate all'i-esimo nodo della frontiera
+	 */
+	private int[] candidates = new int[GRAIN * 4];
+	private long[] candidateDist = new long[GRAIN * 4];
+
+	/**
+	 * Thread condivisi da tutte le ricerche, creati alla prima fase da
+	 * suddividere: un thread per processore, qualunque sia il numero di
+	 * router e di ricerche contemporanee
+	 */
+	private static ForkJoinPool shared;
+
+	/**
+	 * Numero massimo di parti in cui viene suddivisa una fase
+	 */
+	private int threads;
+
+	/**
+	 * Vettori in cui ogni parte di una fase legge gli adiacenti di un nodo e i
+	 * pesi dei relativi archi
+	 */
+	private int[][] adjacents;
+	private long[][] weights;
+
+	/**
+	 * Grafo della ricerca corrente
+	 */
+	private GridGraph graph;
+
+	/**
+	 * Numero di nodi elaborati
+	 */
+	private long settled;
+
+	/**
+	 * Numero di inserimenti nei bucket
+	 */
+	private long pushes;
+
+	/**
+	 * Numero di elementi nei bucket non ancora elaborati e suo massimo
+	 * nell'ultima ricerca
+	 */
+	private int pending;
+	private int maxPending;
+
+	/**
+	 * @param dist
+	 *            lo stato in cui mantenere le distanze, di cui la ricerca
+	 *            diventa proprietaria
+	 * @param threads
+	 *            il numero massimo di thread che eseguono una fase
+	 */
+	DeltaStepping(SearchState dist, int threads) {
+		this.dist = dist;
+		this.threads = Math.max(1, threads);
+		adjacents = new int[this.threads][4];
+		weights = new long[this.threads][4];
+	}
+
+	/**
+	 * Libera lo stato delle distanze: la ricerca non puo' piu' essere usata. I
+	 * thread condivisi non vengono terminati: sono demoni e servono alle altre
+	 * ricerche
+	 */
+	void release() {
+		dist.release();
+	}
+
+	/**
+	 * @return i thread condivisi, creati se necessario
+	 */
+	private static synchronized ForkJoinPool pool() {
+		if (shared == null)
+			shared = new ForkJoinPool(Runtime.getRuntime()
+					.availableProcessors());
+		return shared;
+	}
+
+	/**
+	 * @return il numero di nodi elaborati dalle ricerche
+	 */
+	long getSettled() {
+		return settled;
+	}
+
+	/**
+	 * @return il numero di inserimenti nei bucket effettuati dalle ricerche
+	 */
+	long getPushes() {
+		return pushes;
+	}
+
+	/**
+	 * @return il numero massimo di elementi presenti contemporaneamente nei
+	 *         bucket durante l'ultima ricerca
+	 */
+	int getMaxPending() {
+		return maxPending;
+	}
+
+	/**
+	 * @param node
+	 * @return la distanza del nodo calcolata dall'ultima ricerca
+	 *         ({@link Long#MAX_VALUE} se non e' stato raggiunto)
+	 */
+	long getDist(int node) {
+		return dist.getDist(node);
+	}
+
+	/**
+	 * Calcola le distanze dai {@code node} del {@code BigNode} source fino a
+	 * quando non e' certa quella del {@code BigNode} target
+	 *
+	 * @param g
+	 *            il grafo
+	 * @param source
+	 *            il {@code BigNode} sorgente
+	 * @param target
+	 *            il {@code BigNode} destinazione
+	 * @return il {@code node} del {@code BigNode} target di distanza minima,
+	 *         -1 se non e' raggiungibile
+	 */
+	int search(GridGraph g, int source, int target) {
+		graph = g;
+		dist.reset();
+		phase = 0;
+		for (IntSequence b : buckets.values())
+			recycle(b);
+		buckets.clear();
+		pending = maxPending = 0;
+		for (int d = 0; d < 4; d++)
+			if (g.exists(source + d)) {
+				dist.set(source + d, 0, 0);
+				push(0, source + d);
+			}
+		while (!buckets.isEmpty()) {
+			long index = buckets.firstKey();
+			settledInBucket.clear();
+			// archi leggeri: il bucket puo' riempirsi di nuovo finche' i costi
+			// non si stabilizzano
+			while (buckets.containsKey(index)) {
+				IntSequence b = buckets.remove(index);
+				pending -= b.size();
+				drain(b, index);
+				recycle(b);
+				// i nodi sono contati solo qui: la fase degli archi pesanti
+				// rielabora quelli gia' elaborati nelle fasi leggere
+				settled += frontierSize;
+				settledInBucket.addAll(frontier, 0, frontierSize);
+				relax(true);
+			}
+			int best = closest(target);
+			if (best >= 0 && dist.getDist(best) >> SHIFT <= index)
+				return best; // nessun bucket successivo puo' migliorarla
+			// archi pesanti, che portano ai bucket successivi
+			drain(settledInBucket, index);
+			relax(false);
+		}
+		return closest(target);
+	}
+
+	/**
+	 * @return il {@code node} del {@code BigNode} indicato di distanza minima,
+	 *         -1 se nessuno e' stato raggiunto
+	 */
+	private int closest(int big) {
+		int best = -1;
+		for (int d = 0; d < 4; d++)
+			if (dist.getDist(big + d) != Long.MAX_VALUE
+					&& (best < 0 || dist.getDist(big + d) < dist.getDist(best)))
+				best = big + d;
+		return best;
+	}
+
+	/**
+	 * Inizia una nuova fase la cui frontiera sono i nodi della lista che
+	 * appartengono ancora al bucket indicato, ognuno una sola volta
+	 */
+	private void drain(IntSequence list, long index) {
+		phase++;
+		if (frontier.length < list.size())
+			frontier = new int[Math.max(list.size(), frontier.length * 2)];
+		frontierSize = 0;
+		for (int i = 0; i < list.size(); i++) {
+			int v = list.get(i);
+			if (dist.getDist(v) >> SHIFT == index && dist.getParent(v) != phase) {
+				dist.setParent(v, phase);
+				frontier[frontierSize++] = v;
+			}
+		}
+	}
+
+	/**
+	 * Calcola in parallelo le distanze candidate attraverso gli archi leggeri
+	 * o pesanti dei nodi della frontiera, poi aggiorna i nodi migliorati e li
+	 * inserisce nei rispettivi bucket
+	 */
+	private void relax(boolean light) {
+		if (frontierSize == 0)
+			return;
+		if (candidates.length < frontierSize * 4) {
+			candidates = new int[frontier.length * 4];
+			candidateDist = new long[frontier.length * 4];
+		}
+		Relax task = new Relax(0, frontierSize, light, 0, threads);
+		if (threads == 1 || frontierSize <= GRAIN)
+			task.compute();
+		else
+			pool().invoke(task);
+		for (int i = 0; i < frontierSize * 4; i++) {
+			int w = candidates[i];
+			if (w >= 0 && candidateDist[i] < dist.getDist(w)) {
+				dist.set(w, candidateDist[i], 0);
+				push(candidateDist[i] >> SHIFT, w);
+			}
+		}
+	}
+
+	/**
+	 * Inserisce un nodo nel bucket indicato
+	 */
+	private void push(long index, int node) {
+		bucket(index).addLast(node);
+		pushes++;
+		maxPending = Math.max(maxPending, ++pending);
+	}
+
+	private IntSequence bucket(long index) {
+		IntSequence b = buckets.get(index);
+		if (b == null) {
+			b = spare.isEmpty() ? new IntSequence() : spare.pop();
+			buckets.put(index, b);
+		}
+		return b;
+	}
+
+	/**
+	 * Svuota un bucket e lo conserva per riusarlo
+	 */
+	private void recycle(IntSequence b) {
+		b.clear();
+		spare.push(b);
+	}
+
+	/**
+	 * Calcolo delle distanze candidate di una parte della frontiera, suddiviso
+	 * ricorsivamente in al piu' parts parti eseguite dai thread condivisi. Le
+	 * parti sono numerate a partire da part: ognuna usa i propri vettori degli
+	 * adiacenti
+	 */
+	private class Relax extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private int from, to;
+		private boolean light;
+		private int part, parts;
+
+		Relax(int from, int to, boolean light, int part, int parts) {
+			this.from = from;
+			this.to = to;
+			this.light = light;
+			this.part = part;
+			this.parts = parts;
+		}
+
+		@Override
+		protected void compute() {
+			if (parts > 1 && to - from > GRAIN) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Relax(from, mid, light, part, parts / 2),
+						new Relax(mid, to, light, part + parts / 2, parts
+								- parts / 2));
+				return;
+			}
+			int[] nodes = adjacents[part];
+			long[] weights = DeltaStepping.this.weights[part];
+			for (int i = from; i < to; i++) {
+				int v = frontier[i];
+				long dv = dist.getDist(v);
+				int n = graph.adjacents(v, nodes, weights);
+				for (int j = 0; j < 4; j++) {
+					int k = i * 4 + j;
+					candidates[k] = -1;
+					if (j >= n || (weights[j] >> SHIFT == 0) != light)
+						continue;
+					long dw = dv + weights[j];
+					if (dw < dist.getDist(nodes[j])) {
+						candidates[k] = nodes[j];
+						candidateDist[k] = dw;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ricostruisce a ritroso un cammino di costo minimo fino al nodo indicato
+	 * e lo riporta nel vettore dei padri: ogni nodo ha come padre l'adiacente
+	 * di indice minore la cui distanza sommata al peso dell'arco e' pari alla
+	 * propria, fino ad un {@code node} sorgente (di distanza nulla), padre di
+	 * se stesso
+	 *
+	 * @param g
+	 *            il grafo
+	 * @param node
+	 *            il nodo di arrivo, con distanza certa
+	 * @param state
+	 *            lo stato in cui scrivere i padri
+	 */
+	void parents(GridGraph g, int node, SearchState state) {
+		int[] nodes = adjacents[0];
+		long[] weights = this.weights[0];
+		state.reset();
+		long dv = dist.getDist(node);
+		while (dv != 0) {
+			int n = g.adjacents(node, nodes, weights);
+			int parent = -1;
+			for (int j = 0; j < n; j++)
+				if ((parent < 0 || nodes[j] < parent)
+						&& dist.getDist(nodes[j]) != Long.MAX_VALUE
+						&& dist.getDist(nodes[j]) + weights[j] == dv)
+					parent = nodes[j];
+			state.setParent(node, parent);
+			node = parent;
+			dv = dist.getDist(node);
+		}
+		state.set(node, 0, node);
+	}
+}
@@ -0,0 +1,91 @@
+package it.insidecode.core;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Allocazione e rilascio esplicito di buffer diretti, la cui memoria e'
+ * esterna allo heap e non viene quindi esaminata dal garbage collector.
+ * Normalmente la memoria di un buffer diretto viene liberata solo quando il
+ * garbage collector ne raccoglie l'oggetto: {@link #free(ByteBuffer)} la
+ * libera subito tramite il cleaner interno della JVM (individuato per
+ * riflessione, dato che non fa parte delle API pubbliche). Se il cleaner non
+ * e' disponibile la memoria viene comunque liberata dal garbage collector.
+ *
+ * @author fscozzafava
+ *
+ */
+class DirectBuffers {
+
+	/**
+	 * Istanza di {@code sun.misc.Unsafe} su cui invocare {@link #INVOKE}
+	 * (JVM dalla versione 9), null se non disponibile
+	 */
+	private static final Object UNSAFE;
+
+	/**
+	 * {@code Unsafe.invokeCleaner(ByteBuffer)} (JVM dalla versione 9), oppure
+	 * {@code DirectBuffer.cleaner()} (JVM fino alla versione 8), null se non
+	 * disponibile
+	 */
+	private static final Method INVOKE;
+
+	static {
+		Object unsafe = null;
+		Method invoke = null;
+		try {
+			Class<?> c = Class.forName("sun.misc.Unsafe");
+			invoke = c.getMethod("invokeCleaner", ByteBuffer.class);
+			Field f = c.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			unsafe = f.get(null);
+		} catch (Exception e) {
+			invoke = null;
+			try {
+				invoke = Class.forName("sun.nio.ch.DirectBuffer").getMethod(
+						"cleaner");
+			} catch (Exception e1) {
+				// il buffer sara' liberato dal garbage collector
+			}
+		}
+		UNSAFE = unsafe;
+		INVOKE = invoke;
+	}
+
+	private DirectBuffers() {
+	}
+
+	/**
+	 * @param bytes
+	 *            la dimensione del buffer in byte
+	 * @return un nuovo buffer diretto azzerato, nell'ordine dei byte nativo
+	 */
+	static ByteBuffer allocate(int bytes) {
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Libera immediatamente la memoria di un buffer diretto: il buffer e le
+	 * sue viste non devono piu' essere usati
+	 *
+	 * @param buffer
+	 *            il buffer restituito da {@link #allocate(int)}
+	 */
+	static void free(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect() || INVOKE == null)
+			return;
+		try {
+			if (UNSAFE != null)
+				INVOKE.invoke(UNSAFE, buffer);
+			else {
+				Object cleaner = INVOKE.invoke(buffer);
+				if (cleaner != null)
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (Exception e) {
+			// il buffer sara' liberato dal garbage collector
+		}
+	}
+}
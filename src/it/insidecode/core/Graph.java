@@ -1,5 +1,7 @@
 package it.insidecode.core;
 
+import java.util.Arrays;
+
 /**
  * Rappresentazione di un grafo non diretto tramite liste di adiacenza. La
  * rappresentazione della struttura consente di mantenere informazioni riguardo
@@ -17,7 +19,7 @@ package it.insidecode.core;
  * @author fscozzafava
  * 
  */
-public class Graph {
+public class Graph implements GridGraph {
 	/**
 	 * Il peso di un arco che incrementa di una unita' la lunghezza di un
 	 * percorso. (001 in rappresentazione binaria)
@@ -36,13 +38,63 @@ public class Graph {
 	 */
 	public static final int INTERSECTION = 4; // 100
 
+	/**
+	 * Pesi impacchettati (come restituiti da {@link #getWeight(int, int)})
+	 * indicizzati per valore dei 3 bit di controllo memorizzati nell'arco
+	 */
+	private static final long[] WEIGHTS = new long[8];
+
+	/**
+	 * Numero massimo di nodi ({@code node}) del grafo: gli indici dei nodi
+	 * condividono un intero con i 3 bit del peso dell'arco a partire dal bit
+	 * 28. Le griglie piu' grandi vanno rappresentate con {@link CompactGraph}
+	 */
+	public static final int MAX_NODES = 1 << 28;
+
+	static {
+		for (int raw = 0; raw < 8; raw++)
+			WEIGHTS[raw] = ((long) (raw >> 2) << 42)
+					| ((long) ((raw >> 1) & 1) << 21) | (raw & 1);
+	}
+
 	private int width;
 	private int height;
 
 	/**
-	 * Matrice bidimensionale nella quale il grafo e' mantenuto il memtoria
+	 * Numero di interi riservati ad ogni nodo nell'array di adiacenza: il
+	 * primo indica il numero di adiacenti (-1 se il nodo non esiste), i
+	 * successivi quattro contengono gli adiacenti veri e propri
+	 */
+	private static final int STRIDE = 5;
+
+	/**
+	 * Numero di nodi ({@code node}) del grafo
+	 */
+	private int size;
+
+	/**
+	 * Array nel quale il grafo e' mantenuto in memoria. Le liste di adiacenza
+	 * dei nodi sono memorizzate in modo contiguo a passo fisso
+	 * {@link #STRIDE}: la lista del nodo n occupa le posizioni da
+	 * {@code n * STRIDE} a {@code n * STRIDE + 4}. In questo modo l'intero
+	 * grafo e' contenuto in un'unica allocazione.
 	 */
-	private int[][] matrix;
+	private int[] adj;
+
+	/**
+	 * Pool da cui proviene l'array {@link #adj}
+	 */
+	private BufferPool pool = BufferPool.NONE;
+
+	/**
+	 * Numero di modifiche apportate al grafo
+	 */
+	private long version;
+
+	/**
+	 * Registro delle modifiche, null se non e' attivo
+	 */
+	private Journal journal;
 
 	/**
 	 * Istanzia un nuovo grafo
@@ -53,12 +105,138 @@ public class Graph {
 	 *            altezza della griglia
 	 */
 	public Graph(int width, int height) {
+		this(width, height, BufferPool.NONE);
+	}
+
+	/**
+	 * Istanzia un nuovo grafo prendendo dal pool indicato l'array in cui e'
+	 * mantenuto
+	 * 
+	 * @param width
+	 *            larghezza della griglia
+	 * @param height
+	 *            altezza della griglia
+	 * @param pool
+	 *            il pool degli array
+	 */
+	public Graph(int width, int height, BufferPool pool) {
+		if ((long) width * height * 4 > MAX_NODES)
+			throw new IllegalArgumentException("grid " + width + "x" + height
+					+ " exceeds " + MAX_NODES + " nodes");
 		this.width = width;
 		this.height = height;
-		matrix = new int[width * height * 4][]; // alloco lo spazio necessario
+		this.pool = pool;
+		size = width * height * 4;
+		// alloco lo spazio necessario: le posizioni successive al contatore di
+		// ogni lista vengono scritte prima di essere lette
+		adj = pool.takeInts(size * STRIDE);
+		for (int i = 0; i < size; i++)
+			adj[i * STRIDE] = -1; // inizialmente nessun nodo esiste
 		initGraph(); // inizializzo il grafo
 	}
 
+	/**
+	 * Istanzia una copia del grafo indicato: le modifiche apportate alla copia
+	 * non si riflettono sull'originale
+	 *
+	 * @param other
+	 *            il grafo da copiare
+	 */
+	public Graph(Graph other) {
+		width = other.width;
+		height = other.height;
+		size = other.size;
+		adj = Arrays.copyOf(other.adj, size * STRIDE);
+	}
+
+	/**
+	 * Riporta il grafo allo stato del grafo indicato, che deve avere le stesse
+	 * dimensioni, senza allocare memoria
+	 *
+	 * @param other
+	 *            il grafo da copiare
+	 */
+	public void copyFrom(Graph other) {
+		if (other.width != width || other.height != height)
+			throw new IllegalArgumentException("graph sizes differ");
+		if (journal != null)
+			throw new IllegalStateException("cannot copy into a journaled graph");
+		System.arraycopy(other.adj, 0, adj, 0, size * STRIDE);
+		version++;
+	}
+
+	/**
+	 * Restituisce al pool l'array in cui e' mantenuto il grafo: il grafo non
+	 * puo' piu' essere usato
+	 */
+	public void release() {
+		pool.give(adj);
+		adj = null;
+		journal = null;
+	}
+
+	/**
+	 * Attiva, se necessario, il registro delle modifiche e ritorna un punto di
+	 * salvataggio dello stato attuale del grafo, a cui e' possibile tornare con
+	 * {@link #rollback(int)} in tempo proporzionale alle modifiche apportate
+	 * nel frattempo (ad esempio dal tracciamento di uno o piu' cammini). I
+	 * punti di salvataggio possono essere annidati.
+	 *
+	 * @return il punto di salvataggio
+	 */
+	public int savepoint() {
+		if (journal == null)
+			journal = new Journal();
+		return journal.savepoint();
+	}
+
+	/**
+	 * Annulla tutte le modifiche apportate al grafo dopo il punto di
+	 * salvataggio indicato, compresi quelli successivi, che non sono piu'
+	 * validi
+	 *
+	 * @param savepoint
+	 *            un punto di salvataggio restituito da {@link #savepoint()}
+	 * @throws IllegalArgumentException
+	 *             se il punto di salvataggio non e' valido
+	 */
+	public void rollback(int savepoint) {
+		if (journal == null)
+			throw new IllegalArgumentException("unknown savepoint " + savepoint);
+		journal.check(savepoint);
+		for (int i = journal.savepoint() - 1; i >= savepoint; i--)
+			adj[journal.index(i)] = journal.old(i);
+		journal.truncate(savepoint);
+		version++;
+	}
+
+	/**
+	 * Rende definitive le modifiche apportate al grafo disattivando il
+	 * registro: i punti di salvataggio non sono piu' validi
+	 */
+	public void clearJournal() {
+		journal = null;
+	}
+
+	/**
+	 * @return true se il registro delle modifiche e' attivo
+	 */
+	public boolean isJournaling() {
+		return journal != null;
+	}
+
+	/**
+	 * Registra il valore di una posizione dell'array {@link #adj} prima che
+	 * venga sovrascritta, se il registro e' attivo
+	 *
+	 * @param i
+	 *            la posizione
+	 */
+	private void save(int i) {
+		if (journal != null)
+			journal.record(i, adj[i]);
+	}
+
 	/**
 	 * Inizializza il grafo
 	 */
@@ -127,8 +305,8 @@ public class Graph {
 		 * interessano in una griglia di adiacenza immaginaria 3x3 queste sono
 		 * le posizioni della croce escluse le diagonali ed il punto centrale.
 		 * Questa procedura istanzia solamente i nodi necessari nel caso in cui
-		 * stessimo analizzando bigNode di bordo inserendo null come valore
-		 * nella matrice nel caso in cui un nodo non esista
+		 * stessimo analizzando bigNode di bordo lasciando il valore -1 come
+		 * numero di adiacenti nel caso in cui un nodo non esista
 		 */
 		for (int i = -1; i <= 1; i++) {
 			for (int j = -1; j <= 1; j++) {
@@ -138,9 +316,9 @@ public class Graph {
 					counter++;
 					continue;
 				}
-				matrix[index + counter] = new int[5]; // istanziamo una nuova
-														// lista di adiacenza
-														// per il nodo
+				adj[(index + counter) * STRIDE] = 0; // il nodo esiste con
+														// una lista di
+														// adiacenza vuota
 
 				/*
 				 * Questo ciclo e' responsabile di effettuare i collegamenti tra
@@ -149,7 +327,7 @@ public class Graph {
 				 * precedenti nella matrice (definiti dall'ordine WNSE).
 				 */
 				for (int k = counter - 1; k >= 0; k--) {
-					if (matrix[index + k] == null)
+					if (!exists(index + k))
 						continue;
 					int weight = LENGHT; // il peso di default e' LENGHT
 					if (k != 3 - counter)
@@ -167,43 +345,50 @@ public class Graph {
 	}
 
 	/**
-	 * Data in ingresso una lista di adiacenza e la definizione di un nodo,
-	 * aggiunge il nodo come adiacente alla lista
+	 * Dato un nodo e la definizione di un altro nodo, aggiunge quest'ultimo
+	 * come adiacente alla lista del primo
 	 * 
-	 * @param adjList
+	 * @param node
 	 * @param adjTo
 	 */
-	private void addAdjacent(int[] adjList, int adjTo) {
-		if (adjList[0] == adjList.length - 1)
+	private void addAdjacent(int node, int adjTo) {
+		int base = node * STRIDE; // posizione della lista del nodo
+		if (adj[base] == STRIDE - 1)
 			throw new RuntimeException(
 					"Adjacent list lenght limit (4) reached for this node");
 		// indice dell'ultimo adiacente aggiunto
-		adjList[++adjList[0]] = adjTo; // incrementiamo il primo valore
-										// dell'array indicante il numero di
-										// adiacenti nella lista (posizione
-										// dell'ultimo adiacente)
+		version++;
+		save(base);
+		save(base + adj[base] + 1);
+		adj[base + ++adj[base]] = adjTo; // incrementiamo il primo valore
+											// della lista indicante il numero
+											// di adiacenti (posizione
+											// dell'ultimo adiacente)
 	}
 
 	/**
-	 * Data in ingresso una lista di adiacenza e la definizione di un nodo,
-	 * rimuove il nodo come adiacente dalla lista
+	 * Dato un nodo e la definizione di un altro nodo, rimuove quest'ultimo
+	 * come adiacente dalla lista del primo
 	 * 
-	 * @param adjList
+	 * @param owner
+	 *            il nodo dalla cui lista rimuovere l'adiacente
 	 * @param node
 	 */
-	private void removeAdjacent(int[] adjList, int node) {
-		if (adjList[0] == 0)
+	private void removeAdjacent(int owner, int node) {
+		int base = owner * STRIDE; // posizione della lista del nodo
+		if (adj[base] <= 0)
 			return; // se la lista di adiacenza risulta vuota ritorno
-		for (int x = 1; x <= adjList[0]; x++) // scorriamo tutti gli adiacenti
+		for (int x = 1; x <= adj[base]; x++) // scorriamo tutti gli adiacenti
 												// in lista sfruttando l'indice
 												// in posizione [0]
 		{
-			if ((adjList[x] & 0xFFFFFFF) == node) // se abbiamo trovato la
-													// posizione del nodo in
-													// lista (il confronto viene
-													// effettuato rimuovento la
-													// parte relativa al peso
-													// dell'arco)
+			if ((adj[base + x] & 0xFFFFFFF) == node) // se abbiamo trovato la
+														// posizione del nodo in
+														// lista (il confronto
+														// viene effettuato
+														// rimuovento la parte
+														// relativa al peso
+														// dell'arco)
 			{
 				/*
 				 * Nel caso in cui il nodo da rimuovere non fosse in ultima
@@ -212,12 +397,17 @@ public class Graph {
 				 * e lo spostiamo in posizione x per mantenere compatta la
 				 * rappresentazione della lista di adiacenza.
 				 */
-				if (x != adjList[0]) {
-					adjList[x] = adjList[adjList[0]];
-					adjList[adjList[0]] = 0;
+				int last = base + adj[base];
+				if (base + x != last) {
+					save(base + x);
+					save(last);
+					adj[base + x] = adj[last];
+					adj[last] = 0;
 				}
-				adjList[0]--; // avendo rimosso un adiacente decrementiamo
+				save(base);
+				adj[base]--; // avendo rimosso un adiacente decrementiamo
 								// l'indice in posizione [0]
+				version++;
 				return;
 			}
 		}
@@ -230,17 +420,19 @@ public class Graph {
 	 *            il nodo da rimuovere
 	 */
 	public void removeNode(int node) {
-		if (matrix[node] == null)
+		if (!exists(node))
 			return; // se il nodo non esiste ritorno
-		for (int i = 1; i <= matrix[node][0]; i++) // scorriamo tutti gli
-													// adiacenti del nodo e
-													// rimuoviamo in cui questo
-													// e' coinvolto
+		int base = node * STRIDE;
+		for (int i = 1; i <= adj[base]; i++) // scorriamo tutti gli
+												// adiacenti del nodo e
+												// rimuoviamo in cui questo
+												// e' coinvolto
 		{
-			removeAdjacent(matrix[matrix[node][i] & 0xFFFFFF], node);
+			removeAdjacent(adj[base + i] & 0xFFFFFFF, node);
 		}
-		matrix[node] = null; // deallochiamo la lista di adiacenza per il nodo
-								// appena rimosso
+		save(base);
+		adj[base] = -1; // marchiamo il nodo appena rimosso come inesistente
+		version++;
 	}
 
 	/**
@@ -269,11 +461,14 @@ public class Graph {
 	 *            se true crea un arco diretto, indiretto altrimenti
 	 */
 	public void addEdge(int nodeA, int nodeB, int weight, boolean direct) {
-		int[] adjA = matrix[nodeA];
-		int[] adjB = matrix[nodeB];
-		addAdjacent(adjA, (weight << 28) | nodeB);
+		addAdjacent(nodeA, (weight << 28) | nodeB);
 		if (!direct)
-			addAdjacent(adjB, (weight << 28) | nodeA);
+			addAdjacent(nodeB, (weight << 28) | nodeA);
+	}
+
+	@Override
+	public long getVersion() {
+		return version;
 	}
 
 	public int getWidth() {
@@ -305,9 +500,10 @@ public class Graph {
 	 * @return l'array degli adiacenti
 	 */
 	private int[] getAdjacentsRaw(int node) {
-		int[] res = new int[matrix[node][0]];
-		for (int i = 1; i <= matrix[node][0]; i++)
-			res[i - 1] = matrix[node][i];
+		int base = node * STRIDE;
+		int[] res = new int[adj[base]];
+		for (int i = 1; i <= adj[base]; i++)
+			res[i - 1] = adj[base + i];
 		return res;
 	}
 
@@ -323,22 +519,46 @@ public class Graph {
 	 * @return il peso
 	 */
 	public long getWeight(int nodeA, int nodeB) {
-		if (matrix[nodeA] == null)
-			throw new IllegalArgumentException("nodeA is not in the graph!");
-		if (matrix[nodeB] == null)
-			throw new IllegalArgumentException("nodeB is not in the graph!");
-		long weight = 0;
-		for (long x : getAdjacentsRaw(nodeA)) {
-			// prendo i 3 bit rappresentanti il peso dell'arco e li shifto in
-			// posizione opportuna
-			if ((x & 0xFFFFFFF) == nodeB) {
-				weight |= (x >> 30) << 42;
-				weight |= ((x >> 29) & 1) << 21;
-				weight |= ((x >> 28) & 1);
-				return weight;
-			}
+		return WEIGHTS[getWeightRaw(nodeA, nodeB)];
+	}
+
+	/**
+	 * Converte i 3 bit di controllo di un arco nel peso impacchettato
+	 * restituito da {@link #getWeight(int, int)}
+	 * 
+	 * @param raw
+	 *            il peso come restituito da {@link #getWeightRaw(int, int)}
+	 * @return il peso
+	 */
+	public static long decodeWeight(int raw) {
+		return WEIGHTS[raw];
+	}
+
+	/**
+	 * Dato un nodo, scrive negli array indicati i suoi adiacenti e i pesi
+	 * (impacchettati come in {@link #getWeight(int, int)}) degli archi che li
+	 * collegano al nodo. A differenza di {@link #getAdjacents(int)} non
+	 * effettua allocazioni ne' ricerche: e' pensato per il ciclo interno degli
+	 * algoritmi di ricerca. Gli array devono poter contenere almeno 4
+	 * elementi.
+	 * 
+	 * @param node
+	 *            il nodo
+	 * @param nodes
+	 *            array in cui scrivere gli adiacenti
+	 * @param weights
+	 *            array in cui scrivere i pesi degli archi
+	 * @return il numero di adiacenti (0 se il nodo non esiste)
+	 */
+	public int adjacents(int node, int[] nodes, long[] weights) {
+		int base = node * STRIDE;
+		int count = adj[base];
+		for (int i = 0; i < count; i++) {
+			int x = adj[base + 1 + i];
+			nodes[i] = x & 0xFFFFFFF;
+			weights[i] = WEIGHTS[x >>> 28];
 		}
-		return 0;
+		return count < 0 ? 0 : count;
 	}
 
 	/**
@@ -350,7 +570,7 @@ public class Graph {
 	 * @param weight
 	 */
 	public void increaseWeight(int nodeA, int nodeB, int weight) {
-		if (matrix[nodeA] == null || matrix[nodeB] == null)
+		if (!exists(nodeA) || !exists(nodeB))
 			return; // non esiste l'arco da incrementare perche gia rimosso in
 					// precedenza, ritorno
 		increaseWeightDirect(nodeA, nodeB, weight);
@@ -366,13 +586,15 @@ public class Graph {
 	 * @param weight
 	 */
 	public void increaseWeightDirect(int nodeA, int nodeB, int weight) {
-		if (matrix[nodeA] == null || matrix[nodeB] == null)
+		if (!exists(nodeA) || !exists(nodeB))
 			return; // non esiste l'arco da incrementare perche gia rimosso in
 					// precedenza, ritorno
-		int[] adj = matrix[nodeA];
-		for (int i = 1; i <= adj[0]; i++) {
+		int base = nodeA * STRIDE;
+		for (int i = base + 1; i <= base + adj[base]; i++) {
 			if ((adj[i] & 0xFFFFFFF) == nodeB) {
+				save(i);
 				adj[i] |= (weight << 28);
+				version++;
 				return;
 			}
 		}
@@ -389,16 +611,14 @@ public class Graph {
 	 */
 	public int getWeightRaw(int nodeA, int nodeB) {
 
-		if (matrix[nodeA] == null)
+		if (!exists(nodeA))
 			throw new IllegalArgumentException("nodeA is not in the graph!");
-		if (matrix[nodeB] == null)
+		if (!exists(nodeB))
 			throw new IllegalArgumentException("nodeB is not in the graph!");
-		int weight = 0;
-		for (int x : getAdjacentsRaw(nodeA)) {
-			if ((x & 0xFFFFFFF) == nodeB) {
-				weight = x >> 28;
-				return weight;
-			}
+		int base = nodeA * STRIDE;
+		for (int i = base + 1; i <= base + adj[base]; i++) {
+			if ((adj[i] & 0xFFFFFFF) == nodeB)
+				return adj[i] >>> 28;
 		}
 		return 0;
 	}
@@ -421,7 +641,7 @@ public class Graph {
 	 * @return se il nodo esiste
 	 */
 	public boolean exists(int node) {
-		return node < matrix.length && (matrix[node] != null);
+		return node < size && adj[node * STRIDE] >= 0;
 	}
 
 	/**
@@ -433,12 +653,12 @@ public class Graph {
 	public void removeDiagonalEdges(int node) {
 		int bigNode = (node & 0xFFFFFFFC);
 		for (int i = 0; i < 4; i++) {
-			if (matrix[bigNode + i] == null)
+			if (!exists(bigNode + i))
 				continue;
 			for (int x : getAdjacents(bigNode + i))
 				if (this.getWeightRaw(bigNode + i, x) == LENGHT + TURN) {
-					this.removeAdjacent(matrix[bigNode + i], x);
-					this.removeAdjacent(matrix[x], bigNode + i);
+					this.removeAdjacent(bigNode + i, x);
+					this.removeAdjacent(x, bigNode + i);
 				}
 		}
 	}
@@ -0,0 +1,134 @@
+package it.insidecode.core;
+
+/**
+ * Le operazioni sul grafo a griglia di {@code BigNode} usate dal
+ * {@link Router}. I {@code node} sono identificati come in {@link Graph}: il
+ * {@code node} di direzione d (nell'ordine WNSE) del {@code BigNode} (x, y)
+ * ha indice {@code (x * height + y) * 4 + d}, e i pesi degli archi sono
+ * composti dai bit {@link Graph#LENGHT}, {@link Graph#TURN} e
+ * {@link Graph#INTERSECTION}.
+ * <p>
+ * Le implementazioni disponibili sono {@link Graph}, che mantiene
+ * esplicitamente le liste di adiacenza, e {@link CompactGraph}, che mantiene
+ * pochi bit di stato per {@code BigNode} e ricava gli adiacenti dalle
+ * coordinate. Nessuna delle due puo' essere modificata mentre altri thread la
+ * leggono: {@link ConcurrentGraph} le rende utilizzabili da piu' thread.
+ *
+ * @author fscozzafava
+ *
+ */
+public interface GridGraph {
+
+	/**
+	 * Ritorna il numero di modifiche apportate al grafo: chi mantiene
+	 * informazioni derivate dal grafo puo' cosi' accorgersi che e' cambiato
+	 *
+	 * @return un valore che cambia ad ogni modifica del grafo
+	 */
+	long getVersion();
+
+	/**
+	 * @return la larghezza della griglia
+	 */
+	int getWidth();
+
+	/**
+	 * @return l'altezza della griglia
+	 */
+	int getHeight();
+
+	/**
+	 * Ritorna un valore che indica se il nodo e' presente nel grafo o meno
+	 *
+	 * @param node
+	 * @return se il nodo esiste
+	 */
+	boolean exists(int node);
+
+	/**
+	 * Ritorna un valore che indica se il nodo {@code BigNode} e' presente nel
+	 * grafo o meno (se e' presente almeno un {@code node} ad esso relativo)
+	 *
+	 * @param node
+	 * @return se il nodo esiste
+	 */
+	boolean existsBig(int node);
+
+	/**
+	 * Dato un nodo, scrive negli array indicati i suoi adiacenti e i pesi
+	 * (impacchettati come in {@link #getWeight(int, int)}) degli archi che li
+	 * collegano al nodo, senza effettuare allocazioni. Gli array devono poter
+	 * contenere almeno 4 elementi.
+	 *
+	 * @param node
+	 *            il nodo
+	 * @param nodes
+	 *            array in cui scrivere gli adiacenti
+	 * @param weights
+	 *            array in cui scrivere i pesi degli archi
+	 * @return il numero di adiacenti (0 se il nodo non esiste)
+	 */
+	int adjacents(int node, int[] nodes, long[] weights);
+
+	/**
+	 * Dati due nodi, ritorna il peso dell'arco che li connette impacchettato
+	 * in un long diviso in 3 intervalli da 21 bit (INTERSECTION, TURN,
+	 * LENGHT)
+	 *
+	 * @param nodeA
+	 * @param nodeB
+	 * @return il peso
+	 */
+	long getWeight(int nodeA, int nodeB);
+
+	/**
+	 * Data una coppia di nodi, ritorna il peso dell'arco tra essi come 3 bit
+	 * di controllo (0 se l'arco non esiste)
+	 *
+	 * @param nodeA
+	 * @param nodeB
+	 * @return il peso
+	 * @throws IllegalArgumentException
+	 *             se uno dei due nodi non esiste
+	 */
+	int getWeightRaw(int nodeA, int nodeB);
+
+	/**
+	 * Dati due nodi, incrementa il peso dell'arco non diretto tra di essi del
+	 * valore indicato
+	 *
+	 * @param nodeA
+	 * @param nodeB
+	 * @param weight
+	 */
+	void increaseWeight(int nodeA, int nodeB, int weight);
+
+	/**
+	 * Rimuove dal grafo un nodo
+	 *
+	 * @param node
+	 *            il nodo da rimuovere
+	 */
+	void removeNode(int node);
+
+	/**
+	 * Dato un nodo, rimuove tutti i nodi facenti parte dello stesso bigNode
+	 *
+	 * @param node
+	 */
+	void removeBigNode(int node);
+
+	/**
+	 * Dato un nodo, rimuove tutti gli archi diagonali del bigNode di cui il
+	 * nodo fa parte
+	 *
+	 * @param node
+	 */
+	void removeDiagonalEdges(int node);
+
+	/**
+	 * Restituisce al pool gli array in cui e' mantenuto il grafo: il grafo
+	 * non puo' piu' essere usato
+	 */
+	void release();
+}
@@ -0,0 +1,118 @@
+package it.insidecode.core;
+
+import java.util.Arrays;
+
+/**
+ * {@link SearchState} mantenuto nello heap: il vettore delle distanze, il
+ * vettore dei padri e quello delle epoche sono tre array presi da un
+ * {@link BufferPool}.
+ * 
+ * @author fscozzafava
+ * 
+ */
+public class HeapSearchState implements SearchState {
+
+	/**
+	 * Vettore delle distanze
+	 */
+	private long[] dist;
+
+	/**
+	 * Vettore dei padri
+	 */
+	private int[] p;
+
+	/**
+	 * Epoca in cui e' stata impostata la distanza di ogni nodo
+	 */
+	private int[] stamp;
+
+	/**
+	 * Epoca della ricerca corrente
+	 */
+	private int epoch;
+
+	/**
+	 * Numero di nodi gestiti (gli array presi dal pool possono essere piu'
+	 * lunghi)
+	 */
+	private int capacity;
+
+	/**
+	 * Pool da cui provengono gli array
+	 */
+	private BufferPool pool;
+
+	/**
+	 * Istanzia lo stato di ricerca per i nodi da 0 a {@code capacity - 1}
+	 * 
+	 * @param capacity
+	 *            il numero di nodi del grafo
+	 */
+	public HeapSearchState(int capacity) {
+		this(capacity, BufferPool.NONE);
+	}
+
+	/**
+	 * Istanzia lo stato di ricerca per i nodi da 0 a {@code capacity - 1}
+	 * prendendo gli array dal pool indicato
+	 * 
+	 * @param capacity
+	 *            il numero di nodi del grafo
+	 * @param pool
+	 *            il pool degli array
+	 */
+	public HeapSearchState(int capacity, BufferPool pool) {
+		this.capacity = capacity;
+		this.pool = pool;
+		dist = pool.takeLongs(capacity);
+		p = pool.takeInts(capacity);
+		stamp = pool.takeInts(capacity);
+		Arrays.fill(stamp, 0, capacity, 0); // nessun nodo appartiene all'epoca corrente
+	}
+
+	@Override
+	public void release() {
+		pool.give(dist);
+		pool.give(p);
+		pool.give(stamp);
+		dist = null;
+		p = stamp = null;
+	}
+
+	@Override
+	public void reset() {
+		if (++epoch == Integer.MAX_VALUE) {
+			// esaurite le epoche azzeriamo i timbri e ricominciamo
+			Arrays.fill(stamp, 0, capacity, 0);
+			epoch = 1;
+		}
+	}
+
+	@Override
+	public long getDist(int node) {
+		return stamp[node] == epoch ? dist[node] : Long.MAX_VALUE;
+	}
+
+	@Override
+	public void set(int node, long d, int parent) {
+		dist[node] = d;
+		p[node] = parent;
+		stamp[node] = epoch;
+	}
+
+	@Override
+	public void setParent(int node, int parent) {
+		p[node] = parent;
+	}
+
+	@Override
+	public int getParent(int node) {
+		return p[node];
+	}
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,224 @@
+package it.insidecode.core;
+
+import java.util.Arrays;
+
+/**
+ * Coda di priorita' indicizzata sui nodi del grafo, implementata come heap
+ * 4-ario su array primitivi. Le chiavi sono valori {@code long} (i costi
+ * impacchettati prodotti da {@link Graph#getWeight(int, int)}) e gli elementi
+ * sono gli interi che identificano i nodi. Per ogni nodo viene mantenuta la
+ * sua posizione nell'heap, rendendo possibile un'operazione di
+ * {@code decreaseKey} effettiva senza dover inserire duplicati in coda.
+ *
+ * @author fscozzafava
+ *
+ */
+public class IndexedHeap implements NodeQueue {
+
+	/**
+	 * Grado dell'heap
+	 */
+	private static final int D = 4;
+
+	/**
+	 * Nodi presenti nell'heap, nell'ordine dato dalla struttura ad albero
+	 */
+	private int[] nodes;
+
+	/**
+	 * Chiavi dei nodi, allineate all'array {@link #nodes}
+	 */
+	private long[] keys;
+
+	/**
+	 * Posizione di ogni nodo nell'heap (-1 se il nodo non e' in coda)
+	 */
+	private int[] pos;
+
+	/**
+	 * Numero di elementi in coda
+	 */
+	private int size;
+
+	/**
+	 * Numero di nodi indicizzabili
+	 */
+	private int capacity;
+
+	/**
+	 * Pool da cui proviene l'array {@link #pos}
+	 */
+	private BufferPool pool;
+
+	/**
+	 * Istanzia un nuovo heap in grado di contenere i nodi da 0 a
+	 * {@code capacity - 1}
+	 *
+	 * @param capacity
+	 *            il numero di nodi indicizzabili
+	 */
+	public IndexedHeap(int capacity) {
+		this(capacity, BufferPool.NONE);
+	}
+
+	/**
+	 * Istanzia un nuovo heap in grado di contenere i nodi da 0 a
+	 * {@code capacity - 1}, prendendo dal pool indicato l'array delle
+	 * posizioni
+	 *
+	 * @param capacity
+	 *            il numero di nodi indicizzabili
+	 * @param pool
+	 *            il pool degli array
+	 */
+	public IndexedHeap(int capacity, BufferPool pool) {
+		this.capacity = capacity;
+		this.pool = pool;
+		pos = pool.takeInts(capacity);
+		Arrays.fill(pos, 0, capacity, -1);
+		// gli array dell'heap crescono solo quando necessario
+		int initial = Math.max(1, Math.min(capacity, 1024));
+		nodes = new int[initial];
+		keys = new long[initial];
+	}
+
+	@Override
+	public boolean contains(int node) {
+		return pos[node] >= 0;
+	}
+
+	@Override
+	public void insert(int node, long key) {
+		if (size == nodes.length)
+			grow();
+		nodes[size] = node;
+		keys[size] = key;
+		pos[node] = size;
+		siftUp(size++);
+	}
+
+	@Override
+	public void decreaseKey(int node, long key) {
+		int i = pos[node];
+		keys[i] = key;
+		siftUp(i);
+	}
+
+	@Override
+	public void offer(int node, long key) {
+		if (contains(node))
+			decreaseKey(node, key);
+		else
+			insert(node, key);
+	}
+
+	@Override
+	public long minKey() {
+		return keys[0];
+	}
+
+	@Override
+	public int extractMin() {
+		int min = nodes[0];
+		pos[min] = -1;
+		if (--size > 0) {
+			// spostiamo l'ultimo elemento in cima e lo facciamo scendere
+			nodes[0] = nodes[size];
+			keys[0] = keys[size];
+			pos[nodes[0]] = 0;
+			siftDown(0);
+		}
+		return min;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void release() {
+		pool.give(pos);
+		pos = null;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			pos[nodes[i]] = -1;
+		size = 0;
+	}
+
+	/**
+	 * Fa risalire l'elemento in posizione i fino a ripristinare la proprieta'
+	 * dell'heap
+	 *
+	 * @param i
+	 */
+	private void siftUp(int i) {
+		int node = nodes[i];
+		long key = keys[i];
+		while (i > 0) {
+			int parent = (i - 1) / D;
+			if (keys[parent] <= key)
+				break;
+			// il padre scende nella posizione corrente
+			nodes[i] = nodes[parent];
+			keys[i] = keys[parent];
+			pos[nodes[i]] = i;
+			i = parent;
+		}
+		nodes[i] = node;
+		keys[i] = key;
+		pos[node] = i;
+	}
+
+	/**
+	 * Fa scendere l'elemento in posizione i fino a ripristinare la proprieta'
+	 * dell'heap
+	 *
+	 * @param i
+	 */
+	private void siftDown(int i) {
+		int node = nodes[i];
+		long key = keys[i];
+		while (true) {
+			int first = i * D + 1;
+			if (first >= size)
+				break;
+			// cerchiamo il figlio di priorita' minima
+			int min = first;
+			int last = Math.min(first + D, size);
+			for (int c = first + 1; c < last; c++)
+				if (keys[c] < keys[min])
+					min = c;
+			if (keys[min] >= key)
+				break;
+			nodes[i] = nodes[min];
+			keys[i] = keys[min];
+			pos[nodes[i]] = i;
+			i = min;
+		}
+		nodes[i] = node;
+		keys[i] = key;
+		pos[node] = i;
+	}
+
+	/**
+	 * Raddoppia la capacita' degli array dell'heap
+	 */
+	private void grow() {
+		int length = Math.min(nodes.length * 2, capacity);
+		int[] n = new int[length];
+		long[] k = new long[length];
+		System.arraycopy(nodes, 0, n, 0, size);
+		System.arraycopy(keys, 0, k, 0, size);
+		nodes = n;
+		keys = k;
+	}
+}
@@ -0,0 +1,90 @@
+package it.insidecode.core;
+
+import java.util.Arrays;
+
+/**
+ * Registro delle modifiche di un grafo: per ogni cella della rappresentazione
+ * interna che viene sovrascritta conserva la posizione e il valore precedente,
+ * nell'ordine in cui le modifiche sono avvenute. Un punto di salvataggio e'
+ * la lunghezza del registro in un dato momento: per tornarvi basta
+ * ripristinare a ritroso i valori registrati dopo di esso, in tempo
+ * proporzionale al numero di modifiche e non alle dimensioni del grafo.
+ *
+ * @author fscozzafava
+ *
+ */
+class Journal {
+
+	/**
+	 * Posizioni e valori precedenti delle celle modificate, alternati
+	 */
+	private int[] entries = new int[64];
+
+	/**
+	 * Numero di interi usati in {@link #entries}
+	 */
+	private int length;
+
+	/**
+	 * Registra il valore di una cella prima che venga sovrascritta
+	 *
+	 * @param index
+	 *            la posizione della cella
+	 * @param old
+	 *            il valore precedente
+	 */
+	void record(int index, int old) {
+		if (length + 2 > entries.length)
+			entries = Arrays.copyOf(entries, entries.length * 2);
+		entries[length++] = index;
+		entries[length++] = old;
+	}
+
+	/**
+	 * @return il punto di salvataggio corrispondente allo stato attuale
+	 */
+	int savepoint() {
+		return length >> 1;
+	}
+
+	/**
+	 * Controlla che il punto di salvataggio sia stato restituito da questo
+	 * registro e non sia gia' stato annullato
+	 *
+	 * @param savepoint
+	 * @throws IllegalArgumentException
+	 *             se il punto di salvataggio non e' valido
+	 */
+	void check(int savepoint) {
+		if (savepoint < 0 || savepoint > length >> 1)
+			throw new IllegalArgumentException("unknown savepoint " + savepoint);
+	}
+
+	/**
+	 * @param i
+	 *            la modifica, a partire da 0
+	 * @return la posizione della cella modificata
+	 */
+	int index(int i) {
+		return entries[i << 1];
+	}
+
+	/**
+	 * @param i
+	 *            la modifica, a partire da 0
+	 * @return il valore della cella prima della modifica
+	 */
+	int old(int i) {
+		return entries[(i << 1) + 1];
+	}
+
+	/**
+	 * Dimentica le modifiche successive al punto di salvataggio indicato, dopo
+	 * che sono state annullate
+	 *
+	 * @param savepoint
+	 */
+	void truncate(int savepoint) {
+		length = savepoint << 1;
+	}
+}
@@ -0,0 +1,89 @@
+package it.insidecode.core;
+
+/**
+ * Coda di priorita' indicizzata sui nodi del grafo usata dal {@link Router}.
+ * Le chiavi sono i costi impacchettati prodotti da
+ * {@link Graph#getWeight(int, int)}; ogni nodo e' presente in coda al piu'
+ * una volta.
+ * 
+ * @author fscozzafava
+ * 
+ */
+public interface NodeQueue {
+
+	/**
+	 * Ritorna un valore indicante se il nodo e' presente in coda
+	 * 
+	 * @param node
+	 * @return se il nodo e' in coda
+	 */
+	boolean contains(int node);
+
+	/**
+	 * Inserisce il nodo con priorita' key. Il nodo non deve essere gia'
+	 * presente in coda
+	 * 
+	 * @param node
+	 *            il nodo
+	 * @param key
+	 *            il valore di priorita'
+	 */
+	void insert(int node, long key);
+
+	/**
+	 * Diminuisce la priorita' di un nodo gia' presente in coda
+	 * 
+	 * @param node
+	 *            il nodo
+	 * @param key
+	 *            il nuovo valore di priorita', non superiore al precedente
+	 */
+	void decreaseKey(int node, long key);
+
+	/**
+	 * Inserisce il nodo in coda o, se gia' presente, ne diminuisce la
+	 * priorita'
+	 * 
+	 * @param node
+	 *            il nodo
+	 * @param key
+	 *            il valore di priorita'
+	 */
+	void offer(int node, long key);
+
+	/**
+	 * @return la priorita' del nodo minimo, senza estrarlo
+	 */
+	long minKey();
+
+	/**
+	 * Restituisce il nodo di priorita' minima estraendolo dalla coda
+	 * 
+	 * @return il minimo
+	 */
+	int extractMin();
+
+	/**
+	 * Ritorna un valore indicante se la coda e' vuota o meno
+	 * 
+	 * @return se la coda e' vuota
+	 */
+	boolean isEmpty();
+
+	/**
+	 * @return il numero di elementi in coda
+	 */
+	int size();
+
+	/**
+	 * Svuota la coda. Il costo e' proporzionale al numero di elementi rimasti
+	 * in coda e non al numero di nodi indicizzabili
+	 */
+	void clear();
+
+	/**
+	 * Restituisce al pool da cui provengono gli array della coda: la coda non
+	 * puo' piu' essere usata
+	 */
+	void release();
+}
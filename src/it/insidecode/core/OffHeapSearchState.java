@@ -0,0 +1,124 @@
+package it.insidecode.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link SearchState} mantenuto in memoria esterna allo heap. Distanza, padre
+ * ed epoca di ogni nodo occupano un record di 16 byte contiguo (la distanza
+ * nei primi 8, il padre e l'epoca nei successivi 4 e 4), per cui un
+ * rilassamento tocca una sola linea di cache invece di tre array distinti. I
+ * record sono suddivisi in buffer diretti di {@code 2^CHUNK_SHIFT} nodi, dato
+ * che un singolo buffer non puo' superare i 2 GB.
+ * <p>
+ * La memoria viene liberata da {@link #release()} senza attendere il garbage
+ * collector, che non deve mai esaminarla.
+ *
+ * @author fscozzafava
+ *
+ */
+class OffHeapSearchState implements SearchState {
+
+	/**
+	 * Logaritmo del numero di nodi per buffer
+	 */
+	private static final int CHUNK_SHIFT = 26;
+
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	/**
+	 * Dimensione in byte del record di un nodo
+	 */
+	private static final int RECORD = 16;
+
+	private static final int PARENT = 8;
+
+	private static final int STAMP = 12;
+
+	/**
+	 * Buffer dei record dei nodi
+	 */
+	private ByteBuffer[] chunks;
+
+	/**
+	 * Epoca della ricerca corrente
+	 */
+	private int epoch;
+
+	/**
+	 * Numero di nodi gestiti
+	 */
+	private int capacity;
+
+	/**
+	 * Istanzia lo stato di ricerca per i nodi da 0 a {@code capacity - 1}
+	 *
+	 * @param capacity
+	 *            il numero di nodi del grafo
+	 */
+	OffHeapSearchState(int capacity) {
+		this.capacity = capacity;
+		chunks = new ByteBuffer[(int) (((long) capacity + CHUNK_MASK) >> CHUNK_SHIFT)];
+		try {
+			for (int i = 0; i < chunks.length; i++) {
+				int nodes = Math.min(CHUNK_MASK + 1, capacity - (i << CHUNK_SHIFT));
+				chunks[i] = DirectBuffers.allocate(nodes * RECORD); // azzerato: nessun nodo appartiene all'epoca corrente
+			}
+		} catch (OutOfMemoryError e) {
+			release();
+			throw e;
+		}
+	}
+
+	@Override
+	public void release() {
+		if (chunks == null)
+			return;
+		for (ByteBuffer b : chunks)
+			DirectBuffers.free(b);
+		chunks = null;
+	}
+
+	@Override
+	public void reset() {
+		if (++epoch == Integer.MAX_VALUE) {
+			// esaurite le epoche azzeriamo i timbri e ricominciamo
+			for (ByteBuffer b : chunks)
+				for (int i = STAMP; i < b.capacity(); i += RECORD)
+					b.putInt(i, 0);
+			epoch = 1;
+		}
+	}
+
+	@Override
+	public long getDist(int node) {
+		ByteBuffer b = chunks[node >>> CHUNK_SHIFT];
+		int i = (node & CHUNK_MASK) * RECORD;
+		return b.getInt(i + STAMP) == epoch ? b.getLong(i) : Long.MAX_VALUE;
+	}
+
+	@Override
+	public void set(int node, long d, int parent) {
+		ByteBuffer b = chunks[node >>> CHUNK_SHIFT];
+		int i = (node & CHUNK_MASK) * RECORD;
+		b.putLong(i, d);
+		b.putInt(i + PARENT, parent);
+		b.putInt(i + STAMP, epoch);
+	}
+
+	@Override
+	public void setParent(int node, int parent) {
+		chunks[node >>> CHUNK_SHIFT].putInt((node & CHUNK_MASK) * RECORD
+				+ PARENT, parent);
+	}
+
+	@Override
+	public int getParent(int node) {
+		return chunks[node >>> CHUNK_SHIFT].getInt((node & CHUNK_MASK) * RECORD
+				+ PARENT);
+	}
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,198 @@
+package it.insidecode.core;
+
+import java.util.Arrays;
+
+/**
+ * Sessione di instradamento su un {@link CompactGraph} di base condiviso e
+ * immutabile. La sessione mantiene solo lo stato dei {@code BigNode} che ha
+ * modificato (nodi rimossi, archi diagonali rimossi, archi dritti con il peso
+ * aumentato di {@link Graph#INTERSECTION}) in una tabella hash ad
+ * indirizzamento aperto, e legge tutti gli altri dalla base: la memoria
+ * occupata cresce quindi con le linee tracciate e non con le dimensioni della
+ * griglia. Piu' sessioni, anche su thread diversi, possono condividere la
+ * stessa base, che viene congelata ({@link CompactGraph#freeze()}) alla
+ * creazione della prima sessione e non deve essere liberata finche' le
+ * sessioni sono in uso.
+ * <p>
+ * Una singola sessione non puo' essere usata da piu' thread
+ * contemporaneamente.
+ *
+ * @author fscozzafava
+ *
+ */
+public class OverlayGraph extends CompactGraph {
+
+	/**
+	 * Capacita' iniziale della tabella, potenza di due
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Il grafo di base
+	 */
+	private CompactGraph base;
+
+	/**
+	 * {@code BigNode} modificati (-1 per le posizioni libere) e relativo stato
+	 */
+	private int[] keys;
+	private short[] values;
+
+	/**
+	 * Numero di {@code BigNode} modificati
+	 */
+	private int count;
+
+	/**
+	 * Istanzia una nuova sessione sul grafo di base indicato, congelandolo
+	 *
+	 * @param base
+	 *            il grafo di base, che non puo' essere a sua volta una
+	 *            sessione
+	 */
+	public OverlayGraph(CompactGraph base) {
+		super(base.getWidth(), base.getHeight(), base.readOnlyState());
+		if (base instanceof OverlayGraph)
+			throw new IllegalArgumentException(
+					"the base graph cannot be an overlay");
+		base.freeze();
+		this.base = base;
+		clear(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Istanzia una sessione indipendente con le stesse modifiche della
+	 * sessione indicata e la stessa base
+	 *
+	 * @param other
+	 *            la sessione da copiare
+	 */
+	public OverlayGraph(OverlayGraph other) {
+		this(other.base);
+		keys = other.keys.clone();
+		values = other.values.clone();
+		count = other.count;
+	}
+
+	/**
+	 * @return il grafo di base
+	 */
+	public CompactGraph getBase() {
+		return base;
+	}
+
+	/**
+	 * @return il numero di {@code BigNode} modificati dalla sessione
+	 */
+	public int getModified() {
+		return count;
+	}
+
+	/**
+	 * Annulla tutte le modifiche della sessione, riportandola al grafo di base.
+	 * Come {@link CompactGraph#copyFrom(CompactGraph)} non e' ammessa con il
+	 * registro delle modifiche attivo, che non potrebbe piu' ripristinare i
+	 * punti di salvataggio: in quel caso si torna allo stato voluto con
+	 * {@link #rollback(int)}
+	 *
+	 * @throws IllegalStateException
+	 *             se il registro delle modifiche e' attivo
+	 */
+	public void reset() {
+		if (isJournaling())
+			throw new IllegalStateException("cannot reset a journaled overlay");
+		if (count > 0) {
+			clear(INITIAL_CAPACITY);
+			modified();
+		}
+	}
+
+	/**
+	 * Una sessione non puo' essere sovrascritta con lo stato di un altro
+	 * grafo: le sessioni si copiano con {@link #OverlayGraph(OverlayGraph)}
+	 *
+	 * @throws UnsupportedOperationException
+	 *             sempre
+	 */
+	@Override
+	public void copyFrom(CompactGraph other) {
+		throw new UnsupportedOperationException("an overlay cannot be copied into");
+	}
+
+	/**
+	 * La base appartiene a chi l'ha creata: viene liberata solo la tabella
+	 * della sessione
+	 */
+	@Override
+	public void release() {
+		keys = null;
+		values = null;
+		count = 0;
+		clearJournal();
+	}
+
+	@Override
+	void copyChangesTo(CompactGraph other) {
+		for (int i = 0; i < keys.length; i++)
+			if (keys[i] >= 0)
+				other.store(keys[i], values[i]);
+	}
+
+	@Override
+	int bits(int big) {
+		if (count > 0)
+			for (int i = slot(big);; i = i + 1 & keys.length - 1) {
+				if (keys[i] == big)
+					return values[i];
+				if (keys[i] < 0)
+					break;
+			}
+		return base.bits(big);
+	}
+
+	@Override
+	void store(int big, short bits) {
+		int i = slot(big);
+		while (keys[i] >= 0 && keys[i] != big)
+			i = i + 1 & keys.length - 1;
+		if (keys[i] < 0) {
+			keys[i] = big;
+			if (++count * 2 > keys.length) {
+				values[i] = bits;
+				grow();
+				return;
+			}
+		}
+		values[i] = bits;
+	}
+
+	/**
+	 * @return la posizione iniziale del {@code BigNode} nella tabella
+	 */
+	private int slot(int big) {
+		int h = big * 0x9E3779B9;
+		return (h ^ h >>> 16) & keys.length - 1;
+	}
+
+	/**
+	 * Svuota la tabella allocandola con la capacita' indicata
+	 */
+	private void clear(int capacity) {
+		keys = new int[capacity];
+		Arrays.fill(keys, -1);
+		values = new short[capacity];
+		count = 0;
+	}
+
+	/**
+	 * Raddoppia la capacita' della tabella reinserendo i {@code BigNode}
+	 */
+	private void grow() {
+		int[] oldKeys = keys;
+		short[] oldValues = values;
+		clear(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldKeys[i] >= 0)
+				store(oldKeys[i], oldValues[i]);
+	}
+}
@@ -0,0 +1,257 @@
+package it.insidecode.core;
+
+import java.util.Arrays;
+
+/**
+ * Coda di priorita' monotona indicizzata sui nodi del grafo (radix heap).
+ * Sfrutta il fatto che le chiavi estratte dall'algoritmo di Dijkstra non
+ * decrescono mai: ogni chiave viene collocata nel bucket individuato dal bit
+ * piu' significativo in cui differisce dall'ultima chiave estratta, per cui
+ * nessun confronto tra chiavi e' necessario all'inserimento. Un elemento
+ * puo' soltanto scendere di bucket, quindi viene spostato al piu' 64 volte
+ * in tutta la sua permanenza in coda e il costo ammortizzato delle operazioni
+ * non dipende dal numero di elementi.
+ * <p>
+ * Le chiavi inserite non devono mai essere inferiori all'ultima chiave
+ * estratta. I costi impacchettati di {@link Graph#getWeight(int, int)}
+ * rispettano l'ordine lessicografico (I, S, A) come normali {@code long}.
+ * Le chiavi uguali sono estratte in un ordine diverso da quello di
+ * {@link IndexedHeap}, ma le ricerche Dijkstra e A* del {@link Router}
+ * scelgono padri e {@code node} di arrivo a parita' di costo in base
+ * all'indice, per cui il loro risultato e' identico con entrambe le code.
+ * 
+ * @author fscozzafava
+ * 
+ */
+public class RadixHeap implements NodeQueue {
+
+	/**
+	 * Numero di bucket: il bucket 0 contiene le chiavi uguali all'ultima
+	 * estratta, il bucket i quelle che differiscono da essa al bit i-1 e non
+	 * nei bit piu' significativi (le chiavi sono positive, quindi 63 bit)
+	 */
+	private static final int BUCKETS = 64;
+
+	/**
+	 * Nodi di ciascun bucket
+	 */
+	private int[][] nodes = new int[BUCKETS][];
+
+	/**
+	 * Chiavi dei nodi di ciascun bucket, allineate all'array {@link #nodes}
+	 */
+	private long[][] keys = new long[BUCKETS][];
+
+	/**
+	 * Numero di elementi di ciascun bucket
+	 */
+	private int[] sizes = new int[BUCKETS];
+
+	/**
+	 * Posizione di ogni nodo all'interno del suo bucket (-1 se il nodo non e'
+	 * in coda)
+	 */
+	private int[] slot;
+
+	/**
+	 * Bucket in cui si trova ogni nodo presente in coda
+	 */
+	private byte[] bucket;
+
+	/**
+	 * Ultima chiave estratta (o chiave minima corrente)
+	 */
+	private long last;
+
+	/**
+	 * Pool da cui provengono gli array indicizzati sui nodi
+	 */
+	private BufferPool pool;
+
+	/**
+	 * Numero di elementi in coda
+	 */
+	private int size;
+
+	/**
+	 * Istanzia una nuova coda in grado di contenere i nodi da 0 a
+	 * {@code capacity - 1}
+	 * 
+	 * @param capacity
+	 *            il numero di nodi indicizzabili
+	 */
+	public RadixHeap(int capacity) {
+		this(capacity, BufferPool.NONE);
+	}
+
+	/**
+	 * Istanzia una nuova coda in grado di contenere i nodi da 0 a
+	 * {@code capacity - 1}, prendendo dal pool indicato gli array indicizzati
+	 * sui nodi
+	 * 
+	 * @param capacity
+	 *            il numero di nodi indicizzabili
+	 * @param pool
+	 *            il pool degli array
+	 */
+	public RadixHeap(int capacity, BufferPool pool) {
+		this.pool = pool;
+		slot = pool.takeInts(capacity);
+		bucket = pool.takeBytes(capacity);
+		Arrays.fill(slot, 0, capacity, -1);
+		for (int i = 0; i < BUCKETS; i++) {
+			nodes[i] = new int[16];
+			keys[i] = new long[16];
+		}
+	}
+
+	@Override
+	public boolean contains(int node) {
+		return slot[node] >= 0;
+	}
+
+	@Override
+	public void insert(int node, long key) {
+		if (key < last)
+			throw new IllegalArgumentException(
+					"Key is lower than the last extracted one");
+		add(bucketOf(key), node, key);
+		size++;
+	}
+
+	@Override
+	public void decreaseKey(int node, long key) {
+		if (key < last)
+			throw new IllegalArgumentException(
+					"Key is lower than the last extracted one");
+		remove(node);
+		add(bucketOf(key), node, key);
+	}
+
+	@Override
+	public void offer(int node, long key) {
+		if (contains(node))
+			decreaseKey(node, key);
+		else
+			insert(node, key);
+	}
+
+	@Override
+	public long minKey() {
+		if (sizes[0] == 0)
+			redistribute();
+		return last;
+	}
+
+	@Override
+	public int extractMin() {
+		if (sizes[0] == 0)
+			redistribute();
+		// tutti i nodi del bucket 0 hanno chiave minima: prendiamo l'ultimo
+		int node = nodes[0][--sizes[0]];
+		slot[node] = -1;
+		size--;
+		return node;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void release() {
+		pool.give(slot);
+		pool.give(bucket);
+		slot = null;
+		bucket = null;
+	}
+
+	@Override
+	public void clear() {
+		for (int b = 0; b < BUCKETS; b++) {
+			for (int i = 0; i < sizes[b]; i++)
+				slot[nodes[b][i]] = -1;
+			sizes[b] = 0;
+		}
+		size = 0;
+		last = 0;
+	}
+
+	/**
+	 * Ritorna il bucket in cui collocare una chiave rispetto all'ultima
+	 * chiave estratta
+	 * 
+	 * @param key
+	 * @return l'indice del bucket
+	 */
+	private int bucketOf(long key) {
+		return key == last ? 0 : 64 - Long.numberOfLeadingZeros(key ^ last);
+	}
+
+	/**
+	 * Svuota il primo bucket non vuoto dopo il bucket 0: la sua chiave minima
+	 * diventa l'ultima chiave estratta e tutti i suoi elementi vengono
+	 * ricollocati in bucket di indice inferiore
+	 */
+	private void redistribute() {
+		int b = 1;
+		while (sizes[b] == 0)
+			b++;
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i < sizes[b]; i++)
+			if (keys[b][i] < min)
+				min = keys[b][i];
+		last = min;
+		int n = sizes[b];
+		sizes[b] = 0;
+		for (int i = 0; i < n; i++)
+			add(bucketOf(keys[b][i]), nodes[b][i], keys[b][i]);
+	}
+
+	/**
+	 * Aggiunge un elemento in coda al bucket indicato
+	 * 
+	 * @param b
+	 *            il bucket
+	 * @param node
+	 * @param key
+	 */
+	private void add(int b, int node, long key) {
+		if (sizes[b] == nodes[b].length) {
+			int[] n = new int[nodes[b].length * 2];
+			long[] k = new long[n.length];
+			System.arraycopy(nodes[b], 0, n, 0, sizes[b]);
+			System.arraycopy(keys[b], 0, k, 0, sizes[b]);
+			nodes[b] = n;
+			keys[b] = k;
+		}
+		nodes[b][sizes[b]] = node;
+		keys[b][sizes[b]] = key;
+		slot[node] = sizes[b]++;
+		bucket[node] = (byte) b;
+	}
+
+	/**
+	 * Rimuove un nodo dal suo bucket spostando al suo posto l'ultimo elemento
+	 * del bucket
+	 * 
+	 * @param node
+	 */
+	private void remove(int node) {
+		int b = bucket[node];
+		int i = slot[node];
+		int lastSlot = --sizes[b];
+		if (i != lastSlot) {
+			nodes[b][i] = nodes[b][lastSlot];
+			keys[b][i] = keys[b][lastSlot];
+			slot[nodes[b][i]] = i;
+		}
+		slot[node] = -1;
+	}
+}
@@ -0,0 +1,143 @@
+package it.insidecode.core;
+
+import java.util.Arrays;
+
+/**
+ * Vista in sola lettura di un {@link GridGraph} che registra i
+ * {@code BigNode} letti: una ricerca eseguita sulla vista da' lo stesso
+ * risultato su qualunque grafo che coincida con quello osservato nei
+ * {@code BigNode} registrati. Gli adiacenti di un {@code node} dipendono
+ * anche dai {@code BigNode} vicini, per cui chi confronta la regione letta con
+ * quella modificata deve estendere una delle due ai vicini.
+ * <p>
+ * Ogni {@code BigNode} letto viene marcato con il numero della lettura
+ * corrente: piu' thread della stessa ricerca (ad esempio quelli di
+ * {@link DeltaStepping}) possono leggere la vista contemporaneamente, dal
+ * momento che scrivono tutti lo stesso valore e nessuna marcatura puo' andare
+ * persa.
+ *
+ * @author fscozzafava
+ *
+ */
+class RecordingGraph implements GridGraph {
+
+	private GridGraph graph;
+
+	/**
+	 * Lettura in cui ogni {@code BigNode} e' stato letto per l'ultima volta
+	 */
+	private int[] reads;
+
+	/**
+	 * Lettura corrente
+	 */
+	private int mark = 1;
+
+	/**
+	 * @param graph
+	 *            il grafo osservato
+	 */
+	RecordingGraph(GridGraph graph) {
+		this.graph = graph;
+		reads = new int[graph.getWidth() * graph.getHeight()];
+	}
+
+	/**
+	 * @param big
+	 *            l'indice del {@code BigNode}
+	 * @return true se il {@code BigNode} e' stato letto dall'ultima chiamata a
+	 *         {@link #clear()}
+	 */
+	boolean wasRead(int big) {
+		return reads[big] == mark;
+	}
+
+	/**
+	 * Dimentica i {@code BigNode} letti
+	 */
+	void clear() {
+		if (++mark == Integer.MAX_VALUE) {
+			Arrays.fill(reads, 0);
+			mark = 1;
+		}
+	}
+
+	/**
+	 * Marca come letto il {@code BigNode} del nodo indicato
+	 */
+	private void read(int node) {
+		reads[node >> 2] = mark;
+	}
+
+	@Override
+	public long getVersion() {
+		return graph.getVersion();
+	}
+
+	@Override
+	public int getWidth() {
+		return graph.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return graph.getHeight();
+	}
+
+	@Override
+	public boolean exists(int node) {
+		read(node);
+		return graph.exists(node);
+	}
+
+	@Override
+	public boolean existsBig(int node) {
+		read(node);
+		return graph.existsBig(node);
+	}
+
+	@Override
+	public int adjacents(int node, int[] nodes, long[] weights) {
+		read(node);
+		return graph.adjacents(node, nodes, weights);
+	}
+
+	@Override
+	public long getWeight(int nodeA, int nodeB) {
+		read(nodeA);
+		read(nodeB);
+		return graph.getWeight(nodeA, nodeB);
+	}
+
+	@Override
+	public int getWeightRaw(int nodeA, int nodeB) {
+		read(nodeA);
+		read(nodeB);
+		return graph.getWeightRaw(nodeA, nodeB);
+	}
+
+	@Override
+	public void increaseWeight(int nodeA, int nodeB, int weight) {
+		throw new UnsupportedOperationException("read-only graph");
+	}
+
+	@Override
+	public void removeNode(int node) {
+		throw new UnsupportedOperationException("read-only graph");
+	}
+
+	@Override
+	public void removeBigNode(int node) {
+		throw new UnsupportedOperationException("read-only graph");
+	}
+
+	@Override
+	public void removeDiagonalEdges(int node) {
+		throw new UnsupportedOperationException("read-only graph");
+	}
+
+	@Override
+	public void release() {
+		// il grafo osservato appartiene a chi ha creato la vista
+	}
+}
@@ -1,5 +1,6 @@
 package it.insidecode.core;
 
+import it.insidecode.parser.IntSequence;
 import it.insidecode.parser.Sequence;
 
 public class Router 
@@ -16,61 +17,305 @@ public class Router
 	private int height;
 	
 	/**
-	 * Vettore delle distanze
+	 * Algoritmo di ricerca usato da {@link #route(GridGraph, int, int)}
 	 */
-	private long[] dist;
+	private RoutingOptions.Search search;
 	
 	/**
-	 * Heap di priorita'
+	 * Se true la ricerca e' guidata dalla stima {@link #estimate(int, int)} (algoritmo A*)
 	 */
-	private MyPriorityQueue<Integer> h;
+	private boolean astar;
 	
 	/**
-	 * Vettore dei visitati
+	 * Stato della ricerca: vettore delle distanze e vettore dei padri
 	 */
-	private boolean[] visited;
+	private SearchState state;
 	
 	/**
-	 * Vettore dei padri
+	 * Coda di priorita' indicizzata sui nodi
 	 */
-	private int[] p;
+	private NodeQueue h;
 	
 	/**
-	 * Un nuovo {@link Router} e' costruito con l'istanza di un grafo {@link Graph}
+	 * Stato della visita all'indietro della ricerca bidirezionale (istanziato solo se necessario)
+	 */
+	private SearchState backState;
+	
+	/**
+	 * Coda di priorita' della visita all'indietro della ricerca bidirezionale (istanziata solo se necessario)
+	 */
+	private NodeQueue backH;
+	
+	/**
+	 * Tessere della ricerca gerarchica (istanziate solo se necessario)
+	 */
+	private Tiles tiles;
+	
+	/**
+	 * Ricerca parallela Delta-stepping (istanziata solo se necessario)
+	 */
+	private DeltaStepping delta;
+	
+	/**
+	 * Buffer riutilizzati in cui {@link GridGraph#adjacents(int, int[], long[])} scrive gli adiacenti del nodo espanso
+	 * e i pesi dei relativi archi
+	 */
+	private int[] adjNodes = new int[4];
+	private long[] adjWeights = new long[4];
+	
+	/**
+	 * Numero di nodi estratti dalle code (e quindi espansi) dalla creazione del router
+	 */
+	private long settled;
+	
+	/**
+	 * Listener che riceve le statistiche delle ricerche (null se non registrato)
+	 */
+	private RouterListener listener;
+	
+	/**
+	 * Decoratori delle code che ne contano le operazioni, usati solo se e' registrato un listener
+	 */
+	private CountingQueue counting;
+	private CountingQueue backCounting;
+	
+	/**
+	 * Costo del cammino trovato dall'ultima ricerca, -1 se il cammino non esiste
+	 */
+	private long lastCost;
+	
+	/**
+	 * Un nuovo {@link Router} e' costruito con l'istanza di un grafo {@link GridGraph}
+	 * 
+	 * @param g the {@link GridGraph}
+	 */
+	public Router(GridGraph g)
+	{
+		this(g, new RoutingOptions());
+	}
+	
+	/**
+	 * Un nuovo {@link Router} e' costruito con l'istanza di un grafo {@link GridGraph} e le opzioni di ricerca
 	 * 
-	 * @param g the {@link Graph}
+	 * @param g the {@link GridGraph}
+	 * @param options le opzioni {@link RoutingOptions}
 	 */
-	public Router(Graph g)
+	public Router(GridGraph g, RoutingOptions options)
 	{
 		//inizializzo tutte le strutture dati necessarie
 		width = g.getWidth();
 		height = g.getHeight();
-		p = new int[width*height*4];
-		dist = new long[width*height*4];
-		visited = new boolean[width*height*4];
+		BufferPool pool = options.getPool();
+		state = createState(width*height*4, options);
+		h = options.getQueue().create(width*height*4, pool);
+		search = options.getSearch();
+		astar = search == RoutingOptions.Search.ASTAR;
+		if (search == RoutingOptions.Search.BIDIRECTIONAL)
+		{
+			backState = createState(width*height*4, options);
+			backH = options.getQueue().create(width*height*4, pool);
+		}
+		if (search == RoutingOptions.Search.HIERARCHICAL) tiles = new Tiles(width, height, options.getTileSize());
+		if (search == RoutingOptions.Search.DELTA_STEPPING) delta = new DeltaStepping(createState(width*height*4, options), options.getThreads());
+		if (options.getListener() != null) setListener(options.getListener());
+	}
+	
+	/**
+	 * Istanzia lo stato di una ricerca nella memoria indicata dalle opzioni
+	 * 
+	 * @param capacity il numero di nodi del grafo
+	 * @param options le opzioni {@link RoutingOptions}
+	 * @return lo stato della ricerca
+	 */
+	private static SearchState createState(int capacity, RoutingOptions options)
+	{
+		if (options.getStorage() == RoutingOptions.Storage.OFF_HEAP) return new OffHeapSearchState(capacity);
+		return new HeapSearchState(capacity, options.getPool());
+	}
+	
+	/**
+	 * Registra il listener che riceve le statistiche di ogni ricerca. Le code vengono decorate in modo da contarne
+	 * le operazioni solo da questo momento: senza listener la ricerca non raccoglie alcuna statistica.
+	 * 
+	 * @param listener il listener, null per smettere di raccogliere statistiche
+	 */
+	public void setListener(RouterListener listener)
+	{
+		this.listener = listener;
+		if (listener != null && counting == null)
+		{
+			h = counting = new CountingQueue(h);
+			if (backH != null) backH = backCounting = new CountingQueue(backH);
+		}
+		else if (listener == null && counting != null)
+		{
+			h = counting.getQueue();
+			if (backCounting != null) backH = backCounting.getQueue();
+			counting = backCounting = null;
+		}
+	}
+	
+	/**
+	 * Restituisce al pool delle opzioni gli array delle strutture di ricerca: il router non puo' piu' essere usato
+	 */
+	public void release()
+	{
+		state.release();
+		h.release();
+		if (backState != null)
+		{
+			backState.release();
+			backH.release();
+		}
+		if (delta != null) delta.release();
+	}
+	
+	/**
+	 * @return il numero di nodi espansi dalle ricerche effettuate da questo router
+	 */
+	public long getSettled()
+	{
+		if (delta != null) return settled + delta.getSettled();
+		return tiles != null? settled + tiles.getSettled(): settled;
 	}
 	
 	/**
-	 * Calcola il percorso di costo minimo tra una coppia di nodi usando un'implementazione dell'algoritmo di Dijkstra
+	 * Calcola il percorso di costo minimo tra una coppia di nodi con l'algoritmo di ricerca indicato dalle opzioni
+	 * {@link RoutingOptions} e lo traccia nel grafo
 	 * 
-	 * @param g il grafo {@link Graph}
+	 * @param g il grafo {@link GridGraph}
 	 * @param source nodo sorgente
 	 * @param target nodo destinazione
 	 * @return un oggetto {@link Sequence} rappresentante il cammino. Se questo non esiste l'oggetto non conterra' nodi
 	 */
-	public Sequence dijkstra(Graph g, int source, int target)
+	public Sequence route(GridGraph g, int source, int target)
+	{
+		if (listener == null) return search(g, source, target);
+		counting.resetCounters();
+		if (backCounting != null) backCounting.resetCounters();
+		/* i nodi espansi dalla ricerca gerarchica all'interno delle tessere e quelli della ricerca Delta-stepping
+		 * non passano dalla coda del router
+		 */
+		long tileSettled = tiles != null? tiles.getSettled(): 0;
+		long deltaSettled = delta != null? delta.getSettled(): 0, deltaPushes = delta != null? delta.getPushes(): 0;
+		long start = System.nanoTime();
+		Sequence s = search(g, source, target);
+		long nanos = System.nanoTime() - start;
+		long pushes = counting.getPushes(), decreases = counting.getDecreases(), pops = counting.getPops();
+		if (tiles != null) pops += tiles.getSettled() - tileSettled;
+		int maxSize = counting.getMaxSize();
+		if (delta != null && delta.getSettled() != deltaSettled)
+		{
+			pops += delta.getSettled() - deltaSettled;
+			pushes += delta.getPushes() - deltaPushes;
+			maxSize = Math.max(maxSize, delta.getMaxPending());
+		}
+		if (backCounting != null)
+		{
+			pushes += backCounting.getPushes();
+			decreases += backCounting.getDecreases();
+			pops += backCounting.getPops();
+			maxSize = Math.max(maxSize, backCounting.getMaxSize());
+		}
+		listener.searchCompleted(new SearchStats(source, target, pops, pushes, decreases, maxSize,
+				s.size() > 0? lastCost: -1, s.size(), nanos));
+		return s;
+	}
+	
+	/**
+	 * Esegue la ricerca indicata dalle opzioni
+	 * 
+	 * @param g il grafo {@link GridGraph}
+	 * @param source nodo sorgente
+	 * @param target nodo destinazione
+	 * @return il cammino trovato
+	 */
+	private Sequence search(GridGraph g, int source, int target)
+	{
+		if (search == RoutingOptions.Search.BIDIRECTIONAL)
+			return bidirectional(g, source, target);
+		if (search == RoutingOptions.Search.HIERARCHICAL)
+			return hierarchical(g, source, target);
+		if (search == RoutingOptions.Search.DELTA_STEPPING)
+			return deltaStepping(g, source, target);
+		return dijkstra(g, source, target);
+	}
+	
+	/**
+	 * Calcola il percorso di costo minimo tra una coppia di nodi con l'algoritmo di ricerca indicato dalle opzioni
+	 * senza tracciarlo: il grafo viene soltanto letto e il cammino resta nel vettore dei padri finche' non viene
+	 * tracciato da {@link #commit(GridGraph, int, int)} o sostituito da una nuova ricerca. Il cammino puo' essere
+	 * tracciato anche in un altro grafo, purche' coincida con quello della ricerca in tutti i nodi letti.
+	 * 
+	 * @param g il grafo {@link GridGraph}
+	 * @param source nodo sorgente
+	 * @param target nodo destinazione
+	 * @return il {@code node} del {@code BigNode} target raggiunto, -1 se il cammino non esiste
+	 * @throws UnsupportedOperationException se la ricerca e' {@link RoutingOptions.Search#HIERARCHICAL}, che
+	 * aggiorna le proprie tessere solo tracciando il cammino
+	 */
+	public int find(GridGraph g, int source, int target)
+	{
+		if (search == RoutingOptions.Search.BIDIRECTIONAL)
+			return bidirectionalEnd(g, source, target);
+		if (search == RoutingOptions.Search.HIERARCHICAL)
+			throw new UnsupportedOperationException("hierarchical search cannot defer the trace");
+		if (search == RoutingOptions.Search.DELTA_STEPPING)
+			return deltaSteppingEnd(g, source, target);
+		return dijkstraEnd(g, source, target);
+	}
+	
+	/**
+	 * Traccia nel grafo il cammino trovato dall'ultima ricerca
+	 * 
+	 * @param g il grafo {@link GridGraph}
+	 * @param end il nodo ritornato da {@link #find(GridGraph, int, int)}
+	 * @param source nodo sorgente
+	 * @return un oggetto {@link Sequence} rappresentante il cammino. Se questo non esiste l'oggetto non conterra' nodi
+	 */
+	public Sequence commit(GridGraph g, int end, int source)
+	{
+		if (end < 0) return new Sequence();
+		return trace(g, end, source);
+	}
+	
+	/**
+	 * Calcola il percorso di costo minimo tra una coppia di nodi usando un'implementazione dell'algoritmo di Dijkstra.
+	 * Se le opzioni lo prevedono la priorita' di ogni nodo in coda e' la sua distanza sommata alla stima
+	 * {@link #estimate(int, int)} del costo residuo (algoritmo A*): il cammino trovato resta di costo minimo
+	 * ma la visita si concentra nella direzione del {@code BigNode} target.
+	 * 
+	 * @param g il grafo {@link GridGraph}
+	 * @param source nodo sorgente
+	 * @param target nodo destinazione
+	 * @return un oggetto {@link Sequence} rappresentante il cammino. Se questo non esiste l'oggetto non conterra' nodi
+	 */
+	public Sequence dijkstra(GridGraph g, int source, int target)
+	{
+		return commit(g, dijkstraEnd(g, source, target), source);
+	}
+	
+	/**
+	 * Ricerca di {@link #dijkstra(GridGraph, int, int)}, senza tracciare il cammino
+	 * 
+	 * @param g il grafo {@link GridGraph}
+	 * @param source nodo sorgente
+	 * @param target nodo destinazione
+	 * @return il {@code node} del {@code BigNode} target raggiunto, -1 se il cammino non esiste
+	 */
+	private int dijkstraEnd(GridGraph g, int source, int target)
 	{		
 		// se il nodo target e/o il nodo sorgente non esistono (a causa anche del vincolo di svolta) il cammino non esiste
 		if(!(g.existsBig(source) && g.existsBig(target)))
 		{
-			return new Sequence();
+			return -1;
 		}
-		// inizializzo il vettore dei visitati
-		for(int i = 0; i < visited.length; i++) visited[i] = false;
-		// inizializzo il vettore delle distanze al valore massimo (+ infinito)
-		for(int i = 0; i < dist.length ; i++) dist[i] = Long.MAX_VALUE;
-		// inizializzo la coda di priorita' con dimensione di default il comparatore per i nodi
-		h = new MyPriorityQueue<Integer>();
+		/* inizializzo il vettore delle distanze al valore massimo (+ infinito): passando ad una nuova epoca
+		 * le distanze della ricerca precedente vengono invalidate senza dover scorrere l'intero vettore
+		 */
+		state.reset();
+		// svuoto la coda di priorita' dagli elementi rimasti dalla ricerca precedente
+		h.clear();
 		/* aggiungo i {@code node} del {@code BigNode} source nell'heap in modo che la visita cominci 
 		 * contemporaneamente in tutte le direzioni impostando al tempo stesso i padri.
 		 */
@@ -78,68 +323,423 @@ public class Router
 		{
 			if(g.exists(source+d))
 				{
-					dist[source+d] = 0;
-					h.offer(source+d,0);
-					p[source+d] = source+d;
+					state.set(source+d, 0, source+d);
+					h.insert(source+d, astar? estimate(source+d, target): 0);
 				}
 		}
 		
 		while (!h.isEmpty())
 		{
-			// estraggo il nodo dalla coda
-			int v = h.getMin();
-			/* se il nodo estratto e' gia' stato visitato continuo.
-			 * Questo controllo e' necessario dal momento che per questioni implementative relative all'efficienza
-			 * si e' deciso di implementando l'operazione di decreaseKey nell'heap semplicemente aggiungendo di nuovo il nodo
-			 * in coda senza prima rimuoverlo. Accade cosi' che un nodo puo' essere estratto piu' volte dalla coda.
+			/* estraggo il nodo dalla coda. Dal momento che l'heap supporta l'operazione di decreaseKey
+			 * ogni nodo e' presente in coda al piu' una volta e viene estratto una sola volta, con il suo costo minimo.
 			 */
-			if (visited[v]) continue;
+			int v = h.extractMin();
+			settled++;
 			/* se abbiamo estratto dalla coda (e quindi gia' impostato il costo) 
 			 * per un {@code node} appartenente al {@code BigNode} target la ricerca termina.
 			 */
 			if((v & 0xFFFFFFFC) == target)
 			{
-				// ritorniamo il cammino generato dalla procedura trace dal nodo target al nodo source tramite il vettore dei padri
-				return trace(g, v, source);
+				lastCost = state.getDist(v);
+				/* con A* i predecessori di pari costo di un nodo del cammino possono avere la sua stessa priorita' ed
+				 * essere ancora in coda: espandiamo anche tutti i nodi di priorita' pari al costo trovato, in modo che
+				 * padri e node di arrivo siano scelti tra gli stessi nodi della ricerca senza stima
+				 */
+				if (astar)
+				{
+					while (!h.isEmpty() && h.minKey() <= lastCost)
+					{
+						int u = h.extractMin();
+						settled++;
+						expand(g, u, target);
+					}
+				}
+				/* ritorniamo il nodo da cui la procedura trace risalira' il cammino tramite il vettore dei padri:
+				 * tra i node del BigNode target raggiunti con lo stesso costo (gia' definitivo, dato che tutti i nodi
+				 * di costo inferiore sono stati espansi) scegliamo quello di indice minore, in modo che il cammino
+				 * non dipenda dall'ordine in cui la coda estrae le chiavi uguali
+				 */
+				for (int d = 0; d < 4; d++)
+				{
+					if (state.getDist(target+d) == lastCost) return target+d;
+				}
+				return v;
 			}
-			for(int w : g.getAdjacents(v))
+			expand(g, v, target);
+		}
+		// a seguito di una ricerca esaustiva nel grafo non e' stato trovato un cammino tra il nodo sorgente e destinazione
+		return -1;
+	}
+
+	/**
+	 * Espande un nodo estratto dalla coda della ricerca di {@link #dijkstra(GridGraph, int, int)} rilassandone gli archi
+	 * 
+	 * @param g il grafo {@link GridGraph}
+	 * @param v il nodo estratto, con il suo costo minimo
+	 * @param target nodo destinazione
+	 */
+	private void expand(GridGraph g, int v, int target)
+	{
+		long dv = state.getDist(v);
+		int n = g.adjacents(v, adjNodes, adjWeights);
+		for(int i = 0; i < n; i++)
+		{
+			/* un adiacente gia' estratto dalla coda ha costo minimo non superiore a quello di v:
+			 * essendo i pesi positivi la condizione seguente non sara' mai verificata per esso
+			 */
+			int w = adjNodes[i];
+			long weight = adjWeights[i];
+			long dw = state.getDist(w);
+			if (dw > (dv + weight))
+			{
+				state.set(w, dv + weight, v);
+				/* se posso raggiungere il nodo w tramite v con costo minore lo aggiungo in coda
+				 * con l'adeguato valore di priorita'. Nel caso in cui il nodo fosse gia' presente in coda
+				 * ne diminuiamo semplicemente la priorita'
+				 */
+				h.offer(w, astar? dv + weight + estimate(w, target): dv + weight);
+			}
+			else if (dw == dv + weight && v < state.getParent(w))
 			{
-				/* se un adiacente e' gia' stato visitato, il nodo e' stato estratto dalla coda, 
-				 * quindi visitato, e il suo costo minimo gia' impostato. Inoltre questo impedisce di
-				 * analizzare il padre del nodo da cui e' partita la visita dal momento che questo sarebbe
-				 * gia' stato visitato in precedenza
+				/* a parita' di costo il padre e' il nodo di indice minore: dal momento che tutti i predecessori di
+				 * pari costo di un nodo del cammino vengono espansi prima della fine della ricerca, il padre scelto
+				 * non dipende dall'ordine di estrazione delle chiavi uguali e la ricerca da' lo stesso cammino con
+				 * qualunque coda
 				 */
-				if(visited[v]) continue;
-				//if(dist[w] == -1) continue;//if (visited[w]) continue;// || w == p[v]) continue;
-				long weight = g.getWeight(v, w);
-				if (dist[w] > (dist[v] + weight))
+				state.setParent(w, v);
+			}
+		}
+	}
+
+	/**
+	 * Calcola il percorso di costo minimo tra una coppia di nodi con una versione bidirezionale dell'algoritmo
+	 * di Dijkstra: una visita parte dai {@code node} del {@code BigNode} source, l'altra da quelli del
+	 * {@code BigNode} target, espandendo ogni volta quella il cui minimo in coda e' inferiore. Ogni volta che
+	 * un arco collega un nodo raggiunto da una visita con uno raggiunto dall'altra si aggiorna il costo del
+	 * miglior cammino trovato; la ricerca termina quando la somma dei minimi delle due code non e' inferiore a
+	 * tale costo, dal momento che nessun cammino non ancora esaminato potrebbe costare meno.
+	 * Il cammino trovato viene riportato nel vettore dei padri della visita in avanti, per cui la procedura
+	 * {@link #trace(GridGraph, int, int)} lo traccia esattamente come per la ricerca in una sola direzione.
+	 * 
+	 * @param g il grafo {@link GridGraph}
+	 * @param source nodo sorgente
+	 * @param target nodo destinazione
+	 * @return un oggetto {@link Sequence} rappresentante il cammino. Se questo non esiste l'oggetto non conterra' nodi
+	 */
+	public Sequence bidirectional(GridGraph g, int source, int target)
+	{
+		return commit(g, bidirectionalEnd(g, source, target), source);
+	}
+	
+	/**
+	 * Ricerca di {@link #bidirectional(GridGraph, int, int)}, senza tracciare il cammino
+	 * 
+	 * @param g il grafo {@link GridGraph}
+	 * @param source nodo sorgente
+	 * @param target nodo destinazione
+	 * @return il {@code node} del {@code BigNode} target raggiunto, -1 se il cammino non esiste
+	 */
+	private int bidirectionalEnd(GridGraph g, int source, int target)
+	{
+		if(!(g.existsBig(source) && g.existsBig(target)))
+		{
+			return -1;
+		}
+		// se sorgente e destinazione coincidono non c'e' nulla da incontrare
+		if (source == target) return dijkstraEnd(g, source, target);
+		state.reset();
+		backState.reset();
+		h.clear();
+		backH.clear();
+		for (int d = 0; d < 4; d++)
+		{
+			if(g.exists(source+d))
+			{
+				state.set(source+d, 0, source+d);
+				h.insert(source+d, 0);
+			}
+			if(g.exists(target+d))
+			{
+				backState.set(target+d, 0, target+d);
+				backH.insert(target+d, 0);
+			}
+		}
+		long best = Long.MAX_VALUE; // costo del miglior cammino trovato
+		int meetForward = -1; // ultimo nodo del cammino raggiunto dalla visita in avanti
+		int meetBackward = -1; // primo nodo del cammino raggiunto dalla visita all'indietro
+		while (!h.isEmpty() && !backH.isEmpty())
+		{
+			long minForward = h.minKey();
+			long minBackward = backH.minKey();
+			if (minForward + minBackward >= best) break;
+			// espandiamo la visita piu' arretrata in modo che le due avanzino di pari passo
+			boolean forward = minForward <= minBackward;
+			SearchState own = forward? state: backState;
+			SearchState other = forward? backState: state;
+			NodeQueue queue = forward? h: backH;
+			int v = queue.extractMin();
+			settled++;
+			long dv = own.getDist(v);
+			int n = g.adjacents(v, adjNodes, adjWeights);
+			for (int i = 0; i < n; i++)
+			{
+				int w = adjNodes[i];
+				long dw = dv + adjWeights[i];
+				if (own.getDist(w) > dw)
+				{
+					own.set(w, dw, v);
+					queue.offer(w, dw);
+				}
+				// se w e' gia' stato raggiunto dall'altra visita l'arco (v, w) chiude un cammino completo
+				long otherDist = other.getDist(w);
+				if (otherDist != Long.MAX_VALUE && dw + otherDist < best)
 				{
-					dist[w] = dist[v] + weight;
-					p[w] = v;
-					/* se posso raggiungere il nodo w tramite v con costo minore lo aggiungo in coda
-					 * con l'adeguato valore di priorita'. Nel caso in cui il nodo fosse gia' presente in coda
-					 * ne aggiungiamo semplicemente una copia (che avendo priorita' inferiore verra' estratta prima)
-					 * ignorando le successive occorrenze grazie al vettore dei visitati
-					 */
-					h.offer(w, dist[w]);
+					best = dw + otherDist;
+					meetForward = forward? v: w;
+					meetBackward = forward? w: v;
 				}
-					
 			}
-			visited[v] = true;
 		}
-		// a seguito di una ricerca esaustiva nel grafo non e' stato trovato un cammino tra il nodo sorgente e destinazione
-		return new Sequence();
+		if (best == Long.MAX_VALUE)
+		{
+			// le due visite non si sono incontrate: il cammino non esiste
+			return -1;
+		}
+		/* riportiamo la parte di cammino trovata dalla visita all'indietro nel vettore dei padri della visita
+		 * in avanti, risalendo fino ad un node del BigNode target (l'unico nodo che e' padre di se stesso)
+		 */
+		lastCost = best;
+		state.setParent(meetBackward, meetForward);
+		int current = meetBackward;
+		while (backState.getParent(current) != current)
+		{
+			int next = backState.getParent(current);
+			state.setParent(next, current);
+			current = next;
+		}
+		return current;
+	}
+
+	/**
+	 * Calcola il percorso di costo minimo tra una coppia di nodi con l'algoritmo Delta-stepping
+	 * ({@link DeltaStepping}), che distribuisce su piu' thread i rilassamenti della ricerca. Il cammino viene poi
+	 * ricostruito a ritroso dalle distanze e riportato nel vettore dei padri, per cui la procedura
+	 * {@link #trace(GridGraph, int, int)} lo traccia esattamente come per le altre ricerche.
+	 * 
+	 * @param g il grafo {@link GridGraph}
+	 * @param source nodo sorgente
+	 * @param target nodo destinazione
+	 * @return un oggetto {@link Sequence} rappresentante il cammino. Se questo non esiste l'oggetto non conterra' nodi
+	 */
+	public Sequence deltaStepping(GridGraph g, int source, int target)
+	{
+		return commit(g, deltaSteppingEnd(g, source, target), source);
+	}
+	
+	/**
+	 * Ricerca di {@link #deltaStepping(GridGraph, int, int)}, senza tracciare il cammino
+	 * 
+	 * @param g il grafo {@link GridGraph}
+	 * @param source nodo sorgente
+	 * @param target nodo destinazione
+	 * @return il {@code node} del {@code BigNode} target raggiunto, -1 se il cammino non esiste
+	 */
+	private int deltaSteppingEnd(GridGraph g, int source, int target)
+	{
+		if(!(g.existsBig(source) && g.existsBig(target)))
+		{
+			return -1;
+		}
+		int end = delta.search(g, source, target);
+		if (end < 0)
+		{
+			return -1;
+		}
+		lastCost = delta.getDist(end);
+		delta.parents(g, end, state);
+		return end;
+	}
+
+	/**
+	 * Calcola il percorso di costo minimo tra una coppia di nodi con una ricerca gerarchica. La griglia e' suddivisa
+	 * in tessere ({@link Tiles}) e la ricerca A* procede sul grafo astratto dei nodi di bordo delle tessere: da un
+	 * nodo raggiunto da un'altra tessera si passa direttamente agli altri nodi di bordo della stessa tessera con il
+	 * costo minimo interno ad essa, calcolato una volta e riusato dalle ricerche successive finche' la tessera non
+	 * viene modificata. Nelle tessere di sorgente e destinazione i costi sono calcolati a partire dai relativi
+	 * {@code BigNode}. Dal momento che ogni cammino si scompone in tratti interni alle tessere il costo trovato e'
+	 * quello minimo; il cammino viene poi ricostruito tratto per tratto all'interno delle tessere attraversate e
+	 * riportato nel vettore dei padri, per cui la procedura {@link #trace(GridGraph, int, int)} lo traccia
+	 * esattamente come per le altre ricerche. Infine vengono invalidate le sole tessere modificate dal tracciamento.
+	 * 
+	 * @param g il grafo {@link GridGraph}
+	 * @param source nodo sorgente
+	 * @param target nodo destinazione
+	 * @return un oggetto {@link Sequence} rappresentante il cammino. Se questo non esiste l'oggetto non conterra' nodi
+	 */
+	public Sequence hierarchical(GridGraph g, int source, int target)
+	{
+		if(!(g.existsBig(source) && g.existsBig(target)))
+		{
+			return new Sequence();
+		}
+		if (source == target) return dijkstra(g, source, target);
+		// le tessere modificate da altri dopo l'ultima ricerca vanno ricalcolate
+		tiles.validate(g);
+		state.reset();
+		h.clear();
+		int sourceTile = tiles.tileOf(source);
+		int targetTile = tiles.tileOf(target);
+		// costi dai nodi di bordo della tessera destinazione al BigNode target (il grafo non e' orientato)
+		long[] toTarget = tiles.distances(g, tiles.get(g, targetTile), target);
+		Tiles.Tile first = tiles.get(g, sourceTile);
+		long[] fromSource = tiles.distances(g, first, source);
+		long best = Long.MAX_VALUE; // costo del miglior cammino trovato
+		int exit = -1; // nodo di bordo da cui il miglior cammino entra nel tratto finale, -1 se non lascia la tessera
+		if (sourceTile == targetTile) best = tiles.reached(first, target);
+		/* i nodi di bordo della tessera sorgente sono padri di se stessi: da essi si puo' solo uscire dalla tessera,
+		 * dato che i costi interni sono gia' quelli minimi
+		 */
+		for (int j = 0; j < fromSource.length; j++)
+		{
+			if (fromSource[j] != Long.MAX_VALUE)
+			{
+				int b = first.boundary[j];
+				state.set(b, fromSource[j], b);
+				h.insert(b, fromSource[j] + estimate(b, target));
+			}
+		}
+		while (!h.isEmpty() && h.minKey() < best)
+		{
+			int u = h.extractMin();
+			settled++;
+			long du = state.getDist(u);
+			int tile = tiles.tileOf(u);
+			if (tile == targetTile)
+			{
+				long rest = toTarget[tiles.index(u)];
+				if (rest != Long.MAX_VALUE && du + rest < best)
+				{
+					best = du + rest;
+					exit = u;
+				}
+			}
+			// l'arco esterno porta nella tessera adiacente
+			int n = g.adjacents(u, adjNodes, adjWeights);
+			for (int i = 0; i < n; i++)
+			{
+				if (tiles.tileOf(adjNodes[i]) != tile) relax(adjNodes[i], du + adjWeights[i], u, target);
+			}
+			// i costi interni vanno usati solo entrando nella tessera
+			if (tiles.tileOf(state.getParent(u)) != tile)
+			{
+				Tiles.Tile t = tiles.get(g, tile);
+				long[] row = tiles.row(g, t, tiles.index(u));
+				for (int j = 0; j < row.length; j++)
+				{
+					if (row[j] != Long.MAX_VALUE && t.boundary[j] != u) relax(t.boundary[j], du + row[j], u, target);
+				}
+			}
+		}
+		if (best == Long.MAX_VALUE)
+		{
+			return new Sequence();
+		}
+		// ricostruiamo il cammino completo all'interno delle tessere attraversate
+		IntSequence path = new IntSequence();
+		if (exit < 0) tiles.path(g, first, source, true, target, true, path);
+		else
+		{
+			IntSequence crossing = new IntSequence();
+			for (int b = exit; ; b = state.getParent(b))
+			{
+				crossing.addFirst(b);
+				if (state.getParent(b) == b) break;
+			}
+			tiles.path(g, first, source, true, crossing.get(0), false, path);
+			for (int i = 1; i < crossing.size(); i++)
+			{
+				int from = crossing.get(i - 1), to = crossing.get(i);
+				if (tiles.tileOf(from) == tiles.tileOf(to)) tiles.path(g, tiles.get(g, tiles.tileOf(to)), from, false, to, false, path);
+				else path.addLast(to);
+			}
+			tiles.path(g, tiles.get(g, targetTile), exit, false, target, true, path);
+		}
+		int start = path.get(0);
+		state.set(start, 0, start);
+		for (int i = 1; i < path.size(); i++)
+		{
+			state.setParent(path.get(i), path.get(i - 1));
+		}
+		lastCost = best;
+		Sequence s = trace(g, path.get(path.size() - 1), source);
+		// il tracciamento modifica solo i BigNode del cammino
+		for (int i = 0; i < path.size(); i++)
+		{
+			tiles.invalidate(path.get(i));
+		}
+		tiles.synchronize(g);
+		return s;
+	}
+	
+	/**
+	 * Rilassa un arco della ricerca gerarchica
+	 * 
+	 * @param w il nodo di arrivo
+	 * @param dw il costo con cui il nodo viene raggiunto
+	 * @param parent il nodo di partenza
+	 * @param target il {@code BigNode} destinazione
+	 */
+	private void relax(int w, long dw, int parent, int target)
+	{
+		if (state.getDist(w) > dw)
+		{
+			state.set(w, dw, parent);
+			h.offer(w, dw + estimate(w, target));
+		}
+	}
+
+	/**
+	 * Stima il costo minimo per raggiungere il {@code BigNode} target dal nodo indicato. La stima e' impacchettata
+	 * come i pesi di {@link Graph#getWeight(int, int)} ed e' il costo esatto del cammino migliore nella griglia
+	 * senza figure ne' linee: nessun incrocio, una svolta se il target non e' allineato con la direzione del nodo
+	 * (ovest-est o nord-sud) e la lunghezza minima data dalla distanza di Manhattan tra i due {@code BigNode}.
+	 * Dal momento che il grafo reale si ottiene da quella griglia rimuovendo nodi e aumentando pesi, la stima
+	 * non supera mai il costo reale e non diminuisce lungo un arco piu' del peso dell'arco stesso: ogni nodo
+	 * viene quindi estratto dalla coda una sola volta gia' con il suo costo minimo.
+	 * 
+	 * @param node il nodo
+	 * @param target il {@code BigNode} destinazione
+	 * @return la stima del costo residuo
+	 */
+	private long estimate(int node, int target)
+	{
+		int big = node >> 2;
+		int dx = (target >> 2) / height - big / height;
+		int dy = (target >> 2) % height - big % height;
+		if (dx == 0 && dy == 0) return 0;
+		int side = node & 3; // posizione del nodo nel BigNode secondo la notazione WNSE
+		boolean horizontal = side == 0 || side == 3;
+		// serve una svolta se il target non si trova sulla retta su cui giace il nodo
+		long turns = horizontal? (dy != 0? 1: 0): (dx != 0? 1: 0);
+		/* ogni BigNode attraversato richiede un arco esterno ed uno interno; se il nodo non si trova dal lato
+		 * verso il target bisogna attraversare anche il BigNode di partenza
+		 */
+		boolean towards = side == 0? dx < 0: side == 3? dx > 0: side == 1? dy < 0: dy > 0;
+		long lenght = 2 * (Math.abs(dx) + Math.abs(dy)) - (towards? 1: 0);
+		return (turns << 21) | lenght;
 	}
 
 	/**
-	 * Traccia un cammino a ritroso nel grafo dal nodo target al nodo sorgente risalendo di padre in padre usando il vettore padri
+	 * Traccia un cammino a ritroso nel grafo dal nodo target al nodo sorgente risalendo di padre in padre usando il vettore padri.
+	 * Le modifiche apportate al grafo possono essere annullate con i punti di salvataggio di {@link Graph#savepoint()} e
+	 * {@link CompactGraph#savepoint()}
 	 * 
 	 * @param g
 	 * @param target
 	 * @param source
 	 * @return il cammino
 	 */
-	private Sequence trace(Graph g, int target, int source) {
+	private Sequence trace(GridGraph g, int target, int source) {
 		Sequence s = new Sequence(g.getHeight());
 		/* applichiamo la seguente proceura ai nodi target e source:
 		 * -ricaviamo il BigNode relativo al node
@@ -159,8 +759,8 @@ public class Router
 		 * Sappiamo con certezza che, ad eccezione dei nodi target e source, un cammino interessa
 		 * esattamente due nodi di ogni {@code BigNode} per cui passa.
 		 */
-		int current = p[target];
-		int current1 = p[current];
+		int current = state.getParent(target);
+		int current1 = state.getParent(current);
 		s.addNode(target);
 		while ((current & 0xFFFFFFFC) != source)
 		{
@@ -189,8 +789,8 @@ public class Router
 			}
 			// aggiungiamo il BigNode alla sequenza e risaliamo di padre in padre
 			s.addNode(current);
-			current = p[current1];
-			current1 = p[current];
+			current = state.getParent(current1);
+			current1 = state.getParent(current);
 		}
 		source = current;
 		//source
@@ -0,0 +1,23 @@
+package it.insidecode.core;
+
+/**
+ * Riceve le statistiche di ogni ricerca effettuata da un {@link Router}. Il
+ * listener si registra tramite {@link RoutingOptions#setListener(RouterListener)}
+ * o {@link Router#setListener(RouterListener)}: se nessun listener e'
+ * registrato il router non raccoglie alcuna statistica. Le stesse opzioni
+ * possono essere condivise da casi test eseguiti in parallelo, per cui
+ * l'implementazione deve essere thread-safe.
+ * 
+ * @author fscozzafava
+ * 
+ */
+public interface RouterListener {
+
+	/**
+	 * Chiamato al termine della ricerca del cammino tra una coppia di nodi
+	 * 
+	 * @param stats
+	 *            le statistiche della ricerca
+	 */
+	void searchCompleted(SearchStats stats);
+}
@@ -0,0 +1,356 @@
+package it.insidecode.core;
+
+/**
+ * Raccoglie le opzioni con cui il {@link Router} calcola i cammini di costo
+ * minimo. Le opzioni non modificano il costo dei cammini trovati ma solo il
+ * modo in cui vengono calcolati.
+ * 
+ * @author fscozzafava
+ * 
+ */
+public class RoutingOptions {
+
+	/**
+	 * Le code di priorita' disponibili per la ricerca
+	 * 
+	 * @author fscozzafava
+	 * 
+	 */
+	public enum Queue {
+		/**
+		 * Heap 4-ario indicizzato ({@link IndexedHeap})
+		 */
+		HEAP {
+			@Override
+			NodeQueue create(int capacity, BufferPool pool) {
+				return new IndexedHeap(capacity, pool);
+			}
+		},
+		/**
+		 * Coda monotona a bucket ({@link RadixHeap}): con le ricerche
+		 * {@link Search#DIJKSTRA} e {@link Search#ASTAR} il risultato e'
+		 * identico a quello di {@link #HEAP}
+		 */
+		RADIX {
+			@Override
+			NodeQueue create(int capacity, BufferPool pool) {
+				return new RadixHeap(capacity, pool);
+			}
+		};
+
+		/**
+		 * Istanzia una coda in grado di contenere i nodi da 0 a
+		 * {@code capacity - 1}
+		 * 
+		 * @param capacity
+		 * @param pool
+		 *            il pool da cui prendere gli array della coda
+		 * @return la coda
+		 */
+		abstract NodeQueue create(int capacity, BufferPool pool);
+	}
+
+	/**
+	 * Le rappresentazioni del grafo disponibili
+	 * 
+	 * @author fscozzafava
+	 * 
+	 */
+	public enum Layout {
+		/**
+		 * Liste di adiacenza esplicite ({@link Graph}), 80 byte per
+		 * {@code BigNode}. Le griglie con piu' di {@link Graph#MAX_NODES}
+		 * {@code node} sono comunque rappresentate con {@link CompactGraph}
+		 */
+		ADJACENCY {
+			@Override
+			public GridGraph create(int width, int height, BufferPool pool,
+					Storage storage) {
+				if ((long) width * height * 4 > Graph.MAX_NODES)
+					return COMPACT.create(width, height, pool, storage);
+				return new Graph(width, height, pool); // sempre nello heap
+			}
+
+			@Override
+			public long bytesPerBigNode() {
+				return 4 * 5 * 4;
+			}
+		},
+		/**
+		 * Bit di stato per {@code BigNode} ({@link CompactGraph}), 2 byte per
+		 * {@code BigNode}
+		 */
+		COMPACT {
+			@Override
+			public GridGraph create(int width, int height, BufferPool pool,
+					Storage storage) {
+				return new CompactGraph(width, height, pool, storage);
+			}
+
+			@Override
+			public long bytesPerBigNode() {
+				return 2;
+			}
+		};
+
+		/**
+		 * Istanzia un grafo a griglia privo di figure
+		 * 
+		 * @param width
+		 * @param height
+		 * @param pool
+		 *            il pool da cui prendere gli array del grafo
+		 * @param storage
+		 *            dove mantenere il grafo, se la rappresentazione lo
+		 *            permette
+		 * @return il grafo
+		 */
+		public abstract GridGraph create(int width, int height,
+				BufferPool pool, Storage storage);
+
+		/**
+		 * @return la memoria occupata dal grafo per ogni {@code BigNode}, in
+		 *         byte
+		 */
+		public abstract long bytesPerBigNode();
+	}
+
+	/**
+	 * Dove vengono mantenuti il grafo e lo stato della ricerca
+	 * 
+	 * @author fscozzafava
+	 * 
+	 */
+	public enum Storage {
+		/**
+		 * Array nello heap, eventualmente presi dal pool delle opzioni
+		 */
+		HEAP,
+		/**
+		 * Buffer diretti esterni allo heap, liberati esplicitamente al
+		 * termine del caso test: il garbage collector non deve esaminarli.
+		 * Riguarda il grafo compatto ({@link Layout#COMPACT}) e le distanze e
+		 * i padri della ricerca; le liste di adiacenza di {@link Graph} e le
+		 * code restano nello heap
+		 */
+		OFF_HEAP
+	}
+
+	/**
+	 * Gli algoritmi di ricerca disponibili
+	 * 
+	 * @author fscozzafava
+	 * 
+	 */
+	public enum Search {
+		/**
+		 * Algoritmo di Dijkstra, la visita procede in tutte le direzioni
+		 */
+		DIJKSTRA,
+		/**
+		 * Algoritmo A*, la visita e' guidata verso il {@code BigNode}
+		 * destinazione da una stima del costo residuo che non lo supera mai;
+		 * i cammini sono identici a quelli di {@link #DIJKSTRA}
+		 */
+		ASTAR,
+		/**
+		 * Algoritmo di Dijkstra bidirezionale, due visite partono
+		 * contemporaneamente dal {@code BigNode} sorgente e da quello
+		 * destinazione fino ad incontrarsi
+		 */
+		BIDIRECTIONAL,
+		/**
+		 * Ricerca A* sul grafo astratto delle tessere in cui e' suddivisa la
+		 * griglia ({@link #getTileSize()}), seguita dalla ricostruzione del
+		 * cammino all'interno delle tessere attraversate. I costi tra i bordi
+		 * di ogni tessera vengono riusati dalle ricerche successive finche'
+		 * la tessera non viene modificata
+		 */
+		HIERARCHICAL,
+		/**
+		 * Algoritmo Delta-stepping, i rilassamenti di una singola ricerca
+		 * sono distribuiti su {@link #getThreads()} thread; i cammini sono
+		 * identici a quelli di {@link #DIJKSTRA}
+		 */
+		DELTA_STEPPING
+	}
+
+	private Queue queue = Queue.HEAP;
+
+	private Search search = Search.DIJKSTRA;
+
+	private Layout layout = Layout.ADJACENCY;
+
+	private Storage storage = Storage.HEAP;
+
+	private int tileSize = 8;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private int speculativeThreads = 1;
+
+	private RouterListener listener;
+
+	private BufferPool pool = BufferPool.NONE;
+
+	/**
+	 * @return la coda di priorita' usata dalla ricerca
+	 */
+	public Queue getQueue() {
+		return queue;
+	}
+
+	/**
+	 * Imposta la coda di priorita' usata dalla ricerca
+	 * 
+	 * @param queue
+	 */
+	public void setQueue(Queue queue) {
+		this.queue = queue;
+	}
+
+	/**
+	 * @return l'algoritmo di ricerca
+	 */
+	public Search getSearch() {
+		return search;
+	}
+
+	/**
+	 * Imposta l'algoritmo di ricerca
+	 * 
+	 * @param search
+	 */
+	public void setSearch(Search search) {
+		this.search = search;
+	}
+
+	/**
+	 * @return il lato in {@code BigNode} delle tessere della ricerca
+	 *         {@link Search#HIERARCHICAL}
+	 */
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Imposta il lato in {@code BigNode} delle tessere della ricerca
+	 * {@link Search#HIERARCHICAL}
+	 * 
+	 * @param tileSize
+	 *            il lato, positivo
+	 */
+	public void setTileSize(int tileSize) {
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * @return il numero di thread della ricerca
+	 *         {@link Search#DELTA_STEPPING}
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Imposta il numero di thread della ricerca
+	 * {@link Search#DELTA_STEPPING} (per default uno per processore). I
+	 * thread sono condivisi da tutti i router: il valore limita le parti in
+	 * cui viene suddivisa ogni fase di una ricerca, non crea nuovi thread
+	 * 
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @return il numero di coppie di un caso test instradate in parallelo
+	 *         ({@link SpeculativeRouter}), 1 se le coppie sono instradate in
+	 *         sequenza
+	 */
+	public int getSpeculativeThreads() {
+		return speculativeThreads;
+	}
+
+	/**
+	 * Imposta il numero di coppie di un caso test instradate in parallelo
+	 * da altrettanti thread con {@link SpeculativeRouter}: il risultato e'
+	 * identico a quello dell'instradamento in sequenza (il default, 1). Non
+	 * si applica alla ricerca {@link Search#HIERARCHICAL} ne' quando e'
+	 * registrato un listener
+	 * 
+	 * @param speculativeThreads
+	 */
+	public void setSpeculativeThreads(int speculativeThreads) {
+		this.speculativeThreads = speculativeThreads;
+	}
+
+	/**
+	 * @return la rappresentazione del grafo
+	 */
+	public Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Imposta la rappresentazione del grafo
+	 * 
+	 * @param layout
+	 */
+	public void setLayout(Layout layout) {
+		this.layout = layout;
+	}
+
+	/**
+	 * @return dove vengono mantenuti il grafo e lo stato della ricerca
+	 */
+	public Storage getStorage() {
+		return storage;
+	}
+
+	/**
+	 * Imposta dove vengono mantenuti il grafo e lo stato della ricerca
+	 * 
+	 * @param storage
+	 */
+	public void setStorage(Storage storage) {
+		this.storage = storage;
+	}
+
+	/**
+	 * @return il listener che riceve le statistiche delle ricerche, null se
+	 *         non e' registrato
+	 */
+	public RouterListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Registra il listener che riceve le statistiche di ogni ricerca. Se
+	 * null (il default) le statistiche non vengono raccolte
+	 * 
+	 * @param listener
+	 */
+	public void setListener(RouterListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return il pool da cui il {@link Router} prende gli array della ricerca
+	 */
+	public BufferPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Imposta il pool da cui il {@link Router} prende gli array della ricerca
+	 * (e {@link it.insidecode.parser.Test} quelli del grafo). Per
+	 * default ({@link BufferPool#NONE}) gli array vengono allocati ogni volta
+	 * 
+	 * @param pool
+	 */
+	public void setPool(BufferPool pool) {
+		this.pool = pool;
+	}
+}
@@ -0,0 +1,69 @@
+package it.insidecode.core;
+
+/**
+ * Stato di una ricerca del {@link Router}: il vettore delle distanze e il
+ * vettore dei padri di tutti i nodi del grafo. Ogni ricerca e' identificata
+ * da un numero di generazione (epoca) e ad ogni nodo e' associata l'epoca in
+ * cui la sua distanza e' stata impostata l'ultima volta: una distanza scritta
+ * in un'epoca precedente vale implicitamente + infinito. In questo modo
+ * l'inizializzazione di una nuova ricerca ha costo costante e il lavoro di
+ * ogni ricerca e' proporzionale ai soli nodi che essa effettivamente tocca.
+ * <p>
+ * Lo stato puo' essere mantenuto nello heap ({@link HeapSearchState}) o in
+ * memoria esterna ad esso ({@link RoutingOptions.Storage#OFF_HEAP}).
+ *
+ * @author fscozzafava
+ *
+ */
+public interface SearchState {
+
+	/**
+	 * Libera la memoria dello stato: lo stato non puo' piu' essere usato
+	 */
+	void release();
+
+	/**
+	 * Inizia una nuova ricerca: tutte le distanze tornano implicitamente al
+	 * valore massimo (+ infinito)
+	 */
+	void reset();
+
+	/**
+	 * @param node
+	 * @return la distanza del nodo nella ricerca corrente, {@code Long.MAX_VALUE}
+	 *         se il nodo non e' ancora stato raggiunto
+	 */
+	long getDist(int node);
+
+	/**
+	 * Imposta la distanza e il padre di un nodo nella ricerca corrente
+	 *
+	 * @param node
+	 * @param d
+	 *            la distanza
+	 * @param parent
+	 *            il padre
+	 */
+	void set(int node, long d, int parent);
+
+	/**
+	 * Imposta il padre di un nodo lasciandone invariata la distanza
+	 *
+	 * @param node
+	 * @param parent
+	 *            il padre
+	 */
+	void setParent(int node, int parent);
+
+	/**
+	 * @param node
+	 * @return il padre del nodo, significativo solo se il nodo e' stato
+	 *         raggiunto nella ricerca corrente
+	 */
+	int getParent(int node);
+
+	/**
+	 * @return il numero di nodi gestiti
+	 */
+	int capacity();
+}
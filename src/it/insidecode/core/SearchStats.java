@@ -0,0 +1,162 @@
+package it.insidecode.core;
+
+/**
+ * Statistiche della ricerca del cammino tra una coppia di nodi, consegnate
+ * ad un {@link RouterListener}. Il costo del cammino e' impacchettato come i
+ * pesi di {@link Graph#getWeight(int, int)} e viene scomposto nelle sue tre
+ * componenti da {@link #getIntersections()}, {@link #getTurns()} e
+ * {@link #getLength()}.
+ * 
+ * @author fscozzafava
+ * 
+ */
+public class SearchStats {
+
+	/**
+	 * Maschera di una componente del costo impacchettato
+	 */
+	private static final long COMPONENT = (1L << 21) - 1;
+
+	private int source;
+	private int target;
+	private long settled;
+	private long pushes;
+	private long decreases;
+	private int maxQueueSize;
+	private long cost;
+	private int pathLength;
+	private long nanos;
+
+	/**
+	 * Una nuova {@link SearchStats}
+	 * 
+	 * @param source
+	 *            il {@code BigNode} sorgente
+	 * @param target
+	 *            il {@code BigNode} destinazione
+	 * @param settled
+	 *            i nodi estratti dalle code
+	 * @param pushes
+	 *            i nodi inseriti nelle code
+	 * @param decreases
+	 *            le diminuzioni di priorita' di nodi gia' in coda
+	 * @param maxQueueSize
+	 *            la dimensione massima raggiunta da una coda
+	 * @param cost
+	 *            il costo del cammino, -1 se non esiste
+	 * @param pathLength
+	 *            il numero di nodi del cammino
+	 * @param nanos
+	 *            la durata della ricerca in nanosecondi
+	 */
+	public SearchStats(int source, int target, long settled, long pushes,
+			long decreases, int maxQueueSize, long cost, int pathLength,
+			long nanos) {
+		this.source = source;
+		this.target = target;
+		this.settled = settled;
+		this.pushes = pushes;
+		this.decreases = decreases;
+		this.maxQueueSize = maxQueueSize;
+		this.cost = cost;
+		this.pathLength = pathLength;
+		this.nanos = nanos;
+	}
+
+	public int getSource() {
+		return source;
+	}
+
+	public int getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return il numero di nodi estratti dalle code (nodi espansi)
+	 */
+	public long getSettled() {
+		return settled;
+	}
+
+	/**
+	 * @return il numero di inserimenti nelle code
+	 */
+	public long getPushes() {
+		return pushes;
+	}
+
+	/**
+	 * @return il numero di diminuzioni di priorita' di nodi gia' in coda.
+	 *         Le code indicizzate aggiornano il nodo invece di inserirne un
+	 *         duplicato, per cui non ci sono estrazioni di elementi obsoleti
+	 */
+	public long getDecreases() {
+		return decreases;
+	}
+
+	/**
+	 * @return la dimensione massima raggiunta da una coda durante la ricerca
+	 */
+	public int getMaxQueueSize() {
+		return maxQueueSize;
+	}
+
+	/**
+	 * @return il costo impacchettato del cammino, -1 se il cammino non esiste
+	 */
+	public long getCost() {
+		return cost;
+	}
+
+	/**
+	 * @return il numero di incroci del cammino
+	 */
+	public long getIntersections() {
+		return cost < 0 ? 0 : cost >>> 42;
+	}
+
+	/**
+	 * @return il numero di svolte del cammino
+	 */
+	public long getTurns() {
+		return cost < 0 ? 0 : (cost >>> 21) & COMPONENT;
+	}
+
+	/**
+	 * @return la lunghezza del cammino
+	 */
+	public long getLength() {
+		return cost < 0 ? 0 : cost & COMPONENT;
+	}
+
+	/**
+	 * @return il numero di nodi del cammino tracciato
+	 */
+	public int getPathLength() {
+		return pathLength;
+	}
+
+	/**
+	 * @return la durata della ricerca in nanosecondi
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * @return true se tra sorgente e destinazione non esiste un cammino
+	 */
+	public boolean isUnreachable() {
+		return cost < 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%d -> %d: %s settled=%d pushes=%d decreases=%d maxQueue=%d time=%.3fms",
+				source, target, isUnreachable() ? "unreachable" : String
+						.format("cost=(I=%d,S=%d,A=%d)", getIntersections(),
+								getTurns(), getLength()), settled, pushes,
+				decreases, maxQueueSize, nanos / 1e6);
+	}
+}
@@ -0,0 +1,123 @@
+package it.insidecode.core;
+
+/**
+ * {@link RouterListener} che aggrega le statistiche delle ricerche effettuate
+ * per un caso test: numero di coppie e di coppie non collegabili, totale dei
+ * nodi espansi e delle operazioni sulle code, tempo complessivo e ricerca piu'
+ * lenta. Le statistiche di ogni ricerca possono essere inoltrate ad un altro
+ * listener. Un'istanza va usata da un solo router alla volta.
+ * 
+ * @author fscozzafava
+ * 
+ */
+public class SearchSummary implements RouterListener {
+
+	private RouterListener next;
+	private int pairs;
+	private int unreachable;
+	private long settled;
+	private long pushes;
+	private long decreases;
+	private int maxQueueSize;
+	private long nanos;
+	private SearchStats slowest;
+
+	/**
+	 * Un nuovo {@link SearchSummary} che non inoltra le statistiche
+	 */
+	public SearchSummary() {
+		this(null);
+	}
+
+	/**
+	 * Un nuovo {@link SearchSummary}
+	 * 
+	 * @param next
+	 *            il listener a cui inoltrare le statistiche di ogni ricerca
+	 *            (puo' essere null)
+	 */
+	public SearchSummary(RouterListener next) {
+		this.next = next;
+	}
+
+	@Override
+	public void searchCompleted(SearchStats stats) {
+		pairs++;
+		if (stats.isUnreachable())
+			unreachable++;
+		settled += stats.getSettled();
+		pushes += stats.getPushes();
+		decreases += stats.getDecreases();
+		maxQueueSize = Math.max(maxQueueSize, stats.getMaxQueueSize());
+		nanos += stats.getNanos();
+		if (slowest == null || stats.getNanos() > slowest.getNanos())
+			slowest = stats;
+		if (next != null)
+			next.searchCompleted(stats);
+	}
+
+	/**
+	 * @return il numero di coppie cercate
+	 */
+	public int getPairs() {
+		return pairs;
+	}
+
+	/**
+	 * @return il numero di coppie per cui non esiste un cammino
+	 */
+	public int getUnreachable() {
+		return unreachable;
+	}
+
+	/**
+	 * @return il totale dei nodi espansi
+	 */
+	public long getSettled() {
+		return settled;
+	}
+
+	/**
+	 * @return il totale degli inserimenti nelle code
+	 */
+	public long getPushes() {
+		return pushes;
+	}
+
+	/**
+	 * @return il totale delle diminuzioni di priorita'
+	 */
+	public long getDecreases() {
+		return decreases;
+	}
+
+	/**
+	 * @return la dimensione massima raggiunta da una coda
+	 */
+	public int getMaxQueueSize() {
+		return maxQueueSize;
+	}
+
+	/**
+	 * @return il tempo complessivo delle ricerche in nanosecondi
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * @return le statistiche della ricerca piu' lenta, null se non ci sono
+	 *         state ricerche
+	 */
+	public SearchStats getSlowest() {
+		return slowest;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"pairs=%d unreachable=%d settled=%d pushes=%d decreases=%d maxQueue=%d time=%.3fs slowest=[%s]",
+				pairs, unreachable, settled, pushes, decreases, maxQueueSize,
+				nanos / 1e9, slowest);
+	}
+}
@@ -0,0 +1,235 @@
+package it.insidecode.core;
+
+import it.insidecode.parser.IntSequence;
+import it.insidecode.parser.Pair;
+import it.insidecode.parser.Sequence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Instrada le coppie di un caso test in parallelo mantenendo lo stesso
+ * risultato dell'instradamento sequenziale. Le coppie sono elaborate a
+ * gruppi di tanti elementi quanti sono i thread: le ricerche di un gruppo
+ * vengono eseguite contemporaneamente sul grafo cosi' com'e' all'inizio del
+ * gruppo, senza tracciare i cammini ({@link Router#find(GridGraph, int, int)})
+ * e registrando i {@code BigNode} letti ({@link RecordingGraph}). I cammini
+ * vengono poi tracciati uno alla volta nell'ordine originale: una ricerca che
+ * non ha letto alcun {@code BigNode} modificato dai tracciamenti precedenti
+ * del gruppo (o vicino ad uno di essi) avrebbe dato lo stesso risultato se
+ * eseguita dopo di essi, per cui il suo cammino viene tracciato cosi' com'e';
+ * altrimenti la coppia viene instradata di nuovo sul grafo aggiornato.
+ * <p>
+ * Il guadagno dipende da quanto le coppie successive sono lontane tra loro:
+ * nel caso peggiore ogni coppia tranne la prima di ogni gruppo viene
+ * instradata due volte. Le statistiche delle ricerche non vengono raccolte.
+ *
+ * @author fscozzafava
+ *
+ */
+public class SpeculativeRouter {
+
+	/**
+	 * Router e viste del grafo dei thread, uno per ogni coppia di un gruppo
+	 */
+	private Router[] routers;
+	private RecordingGraph[] views;
+
+	/**
+	 * Pool di thread che esegue le ricerche di un gruppo
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * {@code BigNode} modificati dai tracciamenti del gruppo corrente e loro
+	 * vicini, eventualmente ripetuti
+	 */
+	private IntSequence dirty = new IntSequence();
+
+	private int width;
+	private int height;
+
+	/**
+	 * Numero di coppie instradate di nuovo
+	 */
+	private long retries;
+
+	/**
+	 * Un nuovo {@link SpeculativeRouter} e' costruito con il grafo su cui
+	 * instradare le coppie, le opzioni di ricerca e il numero di thread
+	 *
+	 * @param g
+	 *            il grafo
+	 * @param options
+	 *            le opzioni; la ricerca non puo' essere
+	 *            {@link RoutingOptions.Search#HIERARCHICAL}
+	 * @param threads
+	 *            il numero di thread, e quindi di coppie di ogni gruppo
+	 */
+	public SpeculativeRouter(GridGraph g, RoutingOptions options, int threads) {
+		if (options.getSearch() == RoutingOptions.Search.HIERARCHICAL)
+			throw new IllegalArgumentException(
+					"hierarchical search cannot be speculative");
+		threads = Math.max(1, threads);
+		width = g.getWidth();
+		height = g.getHeight();
+		routers = new Router[threads];
+		views = new RecordingGraph[threads];
+		try {
+			for (int i = 0; i < threads; i++) {
+				routers[i] = new Router(g, options);
+				routers[i].setListener(null);
+				views[i] = new RecordingGraph(g);
+			}
+		} catch (RuntimeException e) {
+			release();
+			throw e;
+		} catch (OutOfMemoryError e) {
+			release();
+			throw e;
+		}
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Restituisce al pool gli array dei router e termina i thread: il router
+	 * non puo' piu' essere usato
+	 */
+	public void release() {
+		for (Router r : routers)
+			if (r != null)
+				r.release();
+		if (executor != null)
+			executor.shutdown();
+	}
+
+	/**
+	 * @return il numero di nodi espansi dalle ricerche, comprese quelle
+	 *         ripetute
+	 */
+	public long getSettled() {
+		long res = 0;
+		for (Router r : routers)
+			res += r.getSettled();
+		return res;
+	}
+
+	/**
+	 * @return il numero di coppie instradate di nuovo perche' la ricerca
+	 *         speculativa aveva letto {@code BigNode} modificati
+	 */
+	public long getRetries() {
+		return retries;
+	}
+
+	/**
+	 * Instrada le coppie indicate nell'ordine dato, tracciando i cammini nel
+	 * grafo
+	 *
+	 * @param g
+	 *            il grafo indicato alla costruzione
+	 * @param pairs
+	 *            le coppie di nodi
+	 * @return i cammini, nello stesso ordine delle coppie
+	 */
+	public List<Sequence> route(final GridGraph g, List<Pair<Integer>> pairs) {
+		List<Sequence> res = new ArrayList<Sequence>(pairs.size());
+		final int[] ends = new int[routers.length];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int start = 0; start < pairs.size(); start += routers.length) {
+			final List<Pair<Integer>> batch = pairs.subList(start,
+					Math.min(pairs.size(), start + routers.length));
+			// ricerche speculative sul grafo all'inizio del gruppo
+			tasks.clear();
+			for (int i = 0; i < batch.size(); i++) {
+				final int k = i;
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						views[k].clear();
+						ends[k] = routers[k].find(views[k],
+								batch.get(k).getFirst(), batch.get(k).getSecond());
+						return null;
+					}
+				});
+			}
+			invokeAll(tasks);
+			// tracciamento nell'ordine originale
+			dirty.clear();
+			for (int i = 0; i < batch.size(); i++) {
+				Pair<Integer> p = batch.get(i);
+				Sequence s;
+				if (i == 0 || !stale(views[i]))
+					s = routers[i].commit(g, ends[i], p.getFirst());
+				else {
+					retries++;
+					s = routers[i].route(g, p.getFirst(), p.getSecond());
+				}
+				for (int j = 0; j < s.size(); j++)
+					touch(s.get(j) >> 2);
+				res.add(s);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Esegue le ricerche di un gruppo e ne attende il termine
+	 */
+	private void invokeAll(List<Callable<Void>> tasks) {
+		if (tasks.size() == 1) {
+			try {
+				tasks.get(0).call();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			return;
+		}
+		try {
+			for (Future<Void> f : executor.invokeAll(tasks))
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return true se la ricerca ha letto uno dei {@code BigNode} modificati
+	 *         nel gruppo corrente
+	 */
+	private boolean stale(RecordingGraph view) {
+		for (int i = 0; i < dirty.size(); i++)
+			if (view.wasRead(dirty.get(i)))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Marca come modificati un {@code BigNode} tracciato e i suoi vicini, le
+	 * cui liste di adiacenza possono contenerne i {@code node}
+	 */
+	private void touch(int big) {
+		int x = big / height, y = big % height;
+		dirty.addLast(big);
+		if (x > 0)
+			dirty.addLast(big - height);
+		if (x < width - 1)
+			dirty.addLast(big + height);
+		if (y > 0)
+			dirty.addLast(big - 1);
+		if (y < height - 1)
+			dirty.addLast(big + 1);
+	}
+}
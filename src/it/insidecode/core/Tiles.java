@@ -0,0 +1,526 @@
+package it.insidecode.core;
+
+import it.insidecode.parser.IntSequence;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Suddivisione della griglia in tessere quadrate di {@code BigNode}, usata
+ * dalla ricerca gerarchica del {@link Router}. I nodi di bordo di una tessera
+ * sono i {@code node} il cui arco esterno porta in un'altra tessera: ogni
+ * cammino si scompone in tratti interni alle tessere che iniziano e finiscono
+ * in nodi di bordo, per cui il grafo astratto formato dai nodi di bordo, dagli
+ * archi esterni tra tessere e dai costi minimi tra nodi di bordo della stessa
+ * tessera ha le stesse distanze del grafo di partenza.
+ * <p>
+ * I costi tra nodi di bordo sono calcolati con l'algoritmo di Dijkstra
+ * ristretto alla tessera, una riga (tutti i costi da un nodo di bordo) alla
+ * volta e solo quando la ricerca astratta ne ha bisogno. Le righe restano in
+ * una cache di dimensione limitata, da cui le tessere meno usate di recente
+ * vengono rimosse; quando il grafo cambia vanno rimosse le sole tessere che
+ * contengono i nodi modificati ({@link #invalidate(int)}), dato che i costi
+ * interni ad una tessera dipendono solo dai suoi nodi. Qualunque altra
+ * modifica del grafo, riconosciuta da {@link GridGraph#getVersion()},
+ * svuota l'intera cache.
+ * <p>
+ * Le tessere ancora intatte, in cui non passano figure ne' linee, hanno tutte
+ * gli stessi costi interni a parita' di dimensioni e di posizione rispetto al
+ * bordo della griglia: le loro righe sono calcolate una sola volta e
+ * condivise, per cui attraversare spazio vuoto non richiede alcuna ricerca
+ * nelle tessere.
+ *
+ * @author fscozzafava
+ *
+ */
+class Tiles {
+
+	/**
+	 * Memoria massima occupata dalle righe in cache, in byte
+	 */
+	private static final long CACHE_BYTES = 64L << 20;
+
+	/**
+	 * Una tessera della griglia
+	 */
+	static class Tile {
+
+		/**
+		 * Coordinate del primo {@code BigNode} e dimensioni della tessera
+		 */
+		final int x0, y0, w, h;
+
+		/**
+		 * Nodi di bordo della tessera: prima i {@code node} W della prima
+		 * colonna, poi i {@code node} E dell'ultima, i {@code node} N della
+		 * prima riga e i {@code node} S dell'ultima (-1 dove la tessera
+		 * confina con il bordo della griglia)
+		 */
+		final int[] boundary;
+
+		/**
+		 * Costi minimi interni alla tessera tra i nodi di bordo, indicizzati
+		 * come {@link #boundary}; una riga e' null finche' non viene calcolata
+		 */
+		final long[][] rows;
+
+		/**
+		 * Se true le righe sono condivise con le altre tessere intatte della
+		 * stessa forma
+		 */
+		final boolean shared;
+
+		/**
+		 * Numero di righe calcolate per questa sola tessera
+		 */
+		int computed;
+
+		Tile(int x0, int y0, int w, int h, int[] boundary, long[][] rows) {
+			this.x0 = x0;
+			this.y0 = y0;
+			this.w = w;
+			this.h = h;
+			this.boundary = boundary;
+			shared = rows != null;
+			this.rows = shared ? rows : new long[boundary.length][];
+		}
+
+		/**
+		 * @return la memoria occupata dalle righe calcolate, in byte
+		 */
+		long bytes() {
+			return (long) computed * boundary.length * 8;
+		}
+	}
+
+	private int width;
+	private int height;
+
+	/**
+	 * Lato delle tessere in {@code BigNode}
+	 */
+	private int size;
+
+	/**
+	 * Numero di tessere lungo l'altezza della griglia
+	 */
+	private int rowsOfTiles;
+
+	/**
+	 * Tessere in cache, nell'ordine dell'ultimo accesso
+	 */
+	private LinkedHashMap<Integer, Tile> cache = new LinkedHashMap<Integer, Tile>(
+			16, 0.75f, true);
+
+	/**
+	 * Memoria occupata dalle righe in cache, in byte
+	 */
+	private long cached;
+
+	/**
+	 * Righe condivise dalle tessere intatte, per forma della tessera
+	 * ({@link #shape(int, int, int, int)})
+	 */
+	private HashMap<Integer, long[][]> templates = new HashMap<Integer, long[][]>();
+
+	/**
+	 * Grafo e versione a cui si riferisce la cache
+	 */
+	private GridGraph graph;
+	private long version;
+
+	/**
+	 * Stato e coda della ricerca ristretta ad una tessera, indicizzati sui
+	 * nodi locali ({@code ((x - x0) * h + y - y0) * 4 + d})
+	 */
+	private SearchState local;
+	private IndexedHeap queue;
+
+	/**
+	 * Buffer riutilizzati per gli adiacenti e per i cammini
+	 */
+	private int[] adjNodes = new int[4];
+	private long[] adjWeights = new long[4];
+	private int[] scratch;
+
+	/**
+	 * Numero di nodi espansi dalle ricerche ristrette
+	 */
+	private long settled;
+
+	/**
+	 * @param width
+	 *            larghezza della griglia
+	 * @param height
+	 *            altezza della griglia
+	 * @param size
+	 *            lato delle tessere in {@code BigNode}
+	 */
+	Tiles(int width, int height, int size) {
+		if (size < 1)
+			throw new IllegalArgumentException("tile size must be positive");
+		this.width = width;
+		this.height = height;
+		this.size = size = Math.min(size, Math.max(width, height));
+		rowsOfTiles = (height + size - 1) / size;
+		local = new HeapSearchState(size * size * 4);
+		queue = new IndexedHeap(size * size * 4);
+		scratch = new int[size * size * 4];
+	}
+
+	/**
+	 * @return il numero di nodi espansi dalle ricerche ristrette alle tessere
+	 */
+	long getSettled() {
+		return settled;
+	}
+
+	/**
+	 * Svuota la cache se il grafo indicato non e' quello a cui si riferisce,
+	 * o se e' stato modificato dopo l'ultima chiamata a
+	 * {@link #synchronize(GridGraph)}
+	 *
+	 * @param g
+	 *            il grafo su cui sta per iniziare una ricerca
+	 */
+	void validate(GridGraph g) {
+		if (g != graph || g.getVersion() != version) {
+			cache.clear();
+			cached = 0;
+		}
+		synchronize(g);
+	}
+
+	/**
+	 * Registra lo stato attuale del grafo come quello a cui si riferisce la
+	 * cache: le tessere in cui il grafo e' stato modificato vanno prima
+	 * rimosse con {@link #invalidate(int)}
+	 *
+	 * @param g
+	 *            il grafo
+	 */
+	void synchronize(GridGraph g) {
+		graph = g;
+		version = g.getVersion();
+	}
+
+	/**
+	 * Rimuove dalla cache la tessera che contiene il nodo indicato
+	 *
+	 * @param node
+	 *            un nodo modificato
+	 */
+	void invalidate(int node) {
+		Tile t = cache.remove(tileOf(node));
+		if (t != null)
+			cached -= t.bytes();
+	}
+
+	/**
+	 * @param node
+	 * @return l'identificativo della tessera che contiene il nodo
+	 */
+	int tileOf(int node) {
+		int big = node >> 2;
+		return big / height / size * rowsOfTiles + big % height / size;
+	}
+
+	/**
+	 * @param node
+	 *            un nodo di bordo
+	 * @return la posizione del nodo nei nodi di bordo della sua tessera
+	 */
+	int index(int node) {
+		int big = node >> 2;
+		int x = big / height, y = big % height;
+		int x0 = x / size * size, y0 = y / size * size;
+		int w = Math.min(size, width - x0), h = Math.min(size, height - y0);
+		switch (node & 3) {
+		case 0:
+			return y - y0;
+		case 3:
+			return h + y - y0;
+		case 1:
+			return 2 * h + x - x0;
+		default:
+			return 2 * h + w + x - x0;
+		}
+	}
+
+	/**
+	 * Ritorna la tessera indicata, istanziandola se non e' in cache
+	 *
+	 * @param g
+	 *            il grafo
+	 * @param id
+	 *            l'identificativo della tessera
+	 * @return la tessera
+	 */
+	Tile get(GridGraph g, int id) {
+		Tile t = cache.get(id);
+		if (t != null)
+			return t;
+		int x0 = id / rowsOfTiles * size, y0 = id % rowsOfTiles * size;
+		int w = Math.min(size, width - x0), h = Math.min(size, height - y0);
+		int[] boundary = new int[2 * (w + h)];
+		for (int i = 0; i < h; i++) {
+			boundary[i] = x0 > 0 ? node(x0, y0 + i, 0) : -1;
+			boundary[h + i] = x0 + w < width ? node(x0 + w - 1, y0 + i, 3)
+					: -1;
+		}
+		for (int i = 0; i < w; i++) {
+			boundary[2 * h + i] = y0 > 0 ? node(x0 + i, y0, 1) : -1;
+			boundary[2 * h + w + i] = y0 + h < height ? node(x0 + i, y0 + h
+					- 1, 2) : -1;
+		}
+		long[][] rows = null;
+		if (intact(g, x0, y0, w, h)) {
+			int shape = shape(x0, y0, w, h);
+			rows = templates.get(shape);
+			if (rows == null) {
+				rows = new long[boundary.length][];
+				templates.put(shape, rows);
+			}
+		}
+		t = new Tile(x0, y0, w, h, boundary, rows);
+		cache.put(id, t);
+		return t;
+	}
+
+	/**
+	 * Ritorna un valore che identifica le tessere che, se intatte, hanno gli
+	 * stessi costi interni: le dimensioni e i lati che confinano con il bordo
+	 * della griglia (dove non esistono i {@code node} esterni)
+	 */
+	private int shape(int x0, int y0, int w, int h) {
+		int sides = (x0 == 0 ? 1 : 0) | (y0 == 0 ? 2 : 0)
+				| (x0 + w == width ? 4 : 0) | (y0 + h == height ? 8 : 0);
+		return ((w * (size + 1) + h) << 4) | sides;
+	}
+
+	/**
+	 * Verifica che la tessera sia nello stato iniziale del grafo: esistono
+	 * tutti i {@code node} che non si affacciano sul bordo della griglia, gli
+	 * archi diagonali e gli archi dritti senza incroci
+	 */
+	private boolean intact(GridGraph g, int x0, int y0, int w, int h) {
+		for (int x = x0; x < x0 + w; x++)
+			for (int y = y0; y < y0 + h; y++) {
+				int base = node(x, y, 0);
+				// node che non si affacciano sul bordo della griglia, in ordine WNSE
+				int expected = (x > 0 ? 1 : 0) | (y > 0 ? 2 : 0)
+						| (y < height - 1 ? 4 : 0) | (x < width - 1 ? 8 : 0);
+				for (int a = 0; a < 4; a++)
+					if (g.exists(base + a) != ((expected >> a & 1) != 0))
+						return false;
+				for (int a = 0; a < 4; a++)
+					for (int b = a + 1; b < 4; b++)
+						if ((expected >> a & expected >> b & 1) != 0
+								&& g.getWeightRaw(base + a, base + b) != (a + b == 3 ? Graph.LENGHT
+										: Graph.LENGHT | Graph.TURN))
+							return false;
+			}
+		return true;
+	}
+
+
+	/**
+	 * Ritorna i costi minimi interni alla tessera dal nodo di bordo indicato
+	 * a tutti i nodi di bordo, calcolandoli se non sono in cache
+	 *
+	 * @param g
+	 *            il grafo
+	 * @param t
+	 *            la tessera
+	 * @param i
+	 *            la posizione del nodo di bordo
+	 * @return i costi, indicizzati come {@link Tile#boundary}
+	 *         ({@link Long#MAX_VALUE} per i nodi non raggiungibili)
+	 */
+	long[] row(GridGraph g, Tile t, int i) {
+		if (t.rows[i] == null) {
+			explore(g, t, t.boundary[i], false, -1, false);
+			t.rows[i] = boundaryDistances(t);
+			if (t.shared)
+				return t.rows[i];
+			t.computed++;
+			cached += t.boundary.length * 8;
+			// rimuoviamo le tessere usate meno di recente
+			Iterator<Tile> it = cache.values().iterator();
+			while (cached > CACHE_BYTES && it.hasNext()) {
+				Tile eldest = it.next();
+				if (eldest != t) {
+					cached -= eldest.bytes();
+					it.remove();
+				}
+			}
+		}
+		return t.rows[i];
+	}
+
+	/**
+	 * Calcola i costi minimi interni alla tessera dai {@code node} del
+	 * {@code BigNode} indicato ai suoi nodi di bordo. Fino alla ricerca
+	 * successiva {@link #reached(Tile, int)} ritorna i costi verso gli altri
+	 * {@code node} della tessera.
+	 *
+	 * @param g
+	 *            il grafo
+	 * @param t
+	 *            la tessera che contiene il {@code BigNode}
+	 * @param big
+	 *            il {@code BigNode}
+	 * @return i costi, indicizzati come {@link Tile#boundary}
+	 */
+	long[] distances(GridGraph g, Tile t, int big) {
+		explore(g, t, big, true, -1, false);
+		return boundaryDistances(t);
+	}
+
+	/**
+	 * @param t
+	 *            la tessera dell'ultima ricerca
+	 * @param big
+	 *            un {@code BigNode} della tessera
+	 * @return il costo minimo con cui l'ultima ricerca ha raggiunto un
+	 *         {@code node} del {@code BigNode}
+	 */
+	long reached(Tile t, int big) {
+		long res = Long.MAX_VALUE;
+		for (int d = 0; d < 4; d++)
+			res = Math.min(res, local.getDist(local(t, big + d)));
+		return res;
+	}
+
+	/**
+	 * Calcola un cammino di costo minimo interno alla tessera e ne aggiunge i
+	 * nodi in coda alla sequenza indicata, omettendo il primo se coincide con
+	 * l'ultimo della sequenza
+	 *
+	 * @param g
+	 *            il grafo
+	 * @param t
+	 *            la tessera
+	 * @param from
+	 *            il nodo di partenza
+	 * @param fromBig
+	 *            se true il cammino parte da un qualsiasi {@code node} del
+	 *            {@code BigNode} di from
+	 * @param to
+	 *            il nodo di arrivo
+	 * @param toBig
+	 *            se true il cammino arriva ad un qualsiasi {@code node} del
+	 *            {@code BigNode} di to
+	 * @param out
+	 *            la sequenza a cui aggiungere i nodi
+	 * @throws IllegalStateException
+	 *             se nella tessera non esiste un cammino
+	 */
+	void path(GridGraph g, Tile t, int from, boolean fromBig, int to,
+			boolean toBig, IntSequence out) {
+		int l = explore(g, t, from, fromBig, to, toBig);
+		if (l < 0)
+			throw new IllegalStateException("no path inside the tile");
+		int count = 0;
+		while (true) {
+			scratch[count++] = global(t, l);
+			int parent = local.getParent(l);
+			if (parent == l)
+				break;
+			l = parent;
+		}
+		if (!out.isEmpty() && out.get(out.size() - 1) == scratch[count - 1])
+			count--;
+		while (count > 0)
+			out.addLast(scratch[--count]);
+	}
+
+	/**
+	 * Algoritmo di Dijkstra ristretto ai nodi della tessera
+	 *
+	 * @param g
+	 *            il grafo
+	 * @param t
+	 *            la tessera
+	 * @param from
+	 *            il nodo di partenza
+	 * @param fromBig
+	 *            se true la ricerca parte da tutti i {@code node} del
+	 *            {@code BigNode} di from
+	 * @param to
+	 *            il nodo a cui fermarsi, -1 per visitare l'intera tessera
+	 * @param toBig
+	 *            se true la ricerca si ferma al primo {@code node} del
+	 *            {@code BigNode} di to
+	 * @return l'indice locale del nodo a cui la ricerca si e' fermata, -1 se
+	 *         non e' stato raggiunto
+	 */
+	private int explore(GridGraph g, Tile t, int from, boolean fromBig,
+			int to, boolean toBig) {
+		local.reset();
+		queue.clear();
+		int first = fromBig ? from & 0xFFFFFFFC : from;
+		int last = fromBig ? first + 3 : from;
+		for (int n = first; n <= last; n++)
+			if (g.exists(n)) {
+				int l = local(t, n);
+				local.set(l, 0, l);
+				queue.insert(l, 0);
+			}
+		while (!queue.isEmpty()) {
+			int l = queue.extractMin();
+			settled++;
+			int v = global(t, l);
+			if (to >= 0 && (toBig ? (v & 0xFFFFFFFC) == (to & 0xFFFFFFFC) : v == to))
+				return l;
+			long dv = local.getDist(l);
+			int n = g.adjacents(v, adjNodes, adjWeights);
+			for (int i = 0; i < n; i++) {
+				int w = local(t, adjNodes[i]);
+				if (w >= 0 && local.getDist(w) > dv + adjWeights[i]) {
+					local.set(w, dv + adjWeights[i], l);
+					queue.offer(w, dv + adjWeights[i]);
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param t
+	 *            la tessera dell'ultima ricerca
+	 * @return i costi con cui l'ultima ricerca ha raggiunto i nodi di bordo
+	 */
+	private long[] boundaryDistances(Tile t) {
+		long[] res = new long[t.boundary.length];
+		for (int j = 0; j < res.length; j++)
+			res[j] = t.boundary[j] < 0 ? Long.MAX_VALUE : local.getDist(local(
+					t, t.boundary[j]));
+		return res;
+	}
+
+	/**
+	 * @return l'indice locale del nodo nella tessera, -1 se il nodo non
+	 *         appartiene alla tessera
+	 */
+	private int local(Tile t, int node) {
+		int big = node >> 2;
+		int x = big / height - t.x0, y = big % height - t.y0;
+		if (x < 0 || x >= t.w || y < 0 || y >= t.h)
+			return -1;
+		return ((x * t.h + y) << 2) | (node & 3);
+	}
+
+	/**
+	 * @return il nodo del grafo corrispondente all'indice locale
+	 */
+	private int global(Tile t, int l) {
+		int big = l >> 2;
+		return node(t.x0 + big / t.h, t.y0 + big % t.h, l & 3);
+	}
+
+	private int node(int x, int y, int side) {
+		return ((x * height + y) << 2) | side;
+	}
+}
@@ -1,5 +1,9 @@
 package it.insidecode.main;
 
+import it.insidecode.core.BufferPool;
+import it.insidecode.core.RouterListener;
+import it.insidecode.core.RoutingOptions;
+import it.insidecode.core.SearchStats;
 import it.insidecode.parser.BinaryParser;
 import it.insidecode.parser.InputParser;
 import it.insidecode.parser.OutputParser;
@@ -14,6 +18,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 
@@ -42,17 +47,39 @@ public class Main {
 	{
 		boolean draw = false;
 		boolean step = false;
+		boolean parallel = false;
+		boolean stats = false;
 		long time = System.nanoTime();
 		InputParser ip = new InputParser();
-		OutputParser op = new OutputParser();
+		RoutingOptions options = new RoutingOptions();
+		options.setPool(new BufferPool());
 		for (String s: args)
 			{
 				if (s.equals("-draw")) draw = true;
 				else if (s.equals("-debug")) DEBUG = true;
 				else if (s.equals("-step")) step = true;
 				else if (s.equals("-verify")) verify = true;
+				else if (s.equals("-parallel")) parallel = true;
 				else if (s.equals("-black")) black = true;
+				else if (s.equals("-radix")) options.setQueue(RoutingOptions.Queue.RADIX);
+				else if (s.equals("-astar")) options.setSearch(RoutingOptions.Search.ASTAR);
+				else if (s.equals("-bidir")) options.setSearch(RoutingOptions.Search.BIDIRECTIONAL);
+				else if (s.equals("-hier")) options.setSearch(RoutingOptions.Search.HIERARCHICAL);
+				else if (s.equals("-delta")) options.setSearch(RoutingOptions.Search.DELTA_STEPPING);
+				else if (s.equals("-speculative")) options.setSpeculativeThreads(Runtime.getRuntime().availableProcessors());
+				else if (s.equals("-compact")) options.setLayout(RoutingOptions.Layout.COMPACT);
+				else if (s.equals("-offheap")) options.setStorage(RoutingOptions.Storage.OFF_HEAP);
+				else if (s.equals("-stats")) stats = true;
 			}
+		if (stats)
+			options.setListener(new RouterListener()
+			{
+				@Override
+				public void searchCompleted(SearchStats s)
+				{
+					if (DEBUG) System.out.println(s);
+				}
+			});
 		if (verify)
 		{
 			int counter = 0;
@@ -62,6 +89,7 @@ public class Main {
 			for (int i = 0; i < tests.size(); i++)
 			{
 				Test t = tests.get(i);
+				t.setOptions(options);
 				int size = t.run().size();
 				List<Sequence> s = bp.parse(size, t.getHeight());
 				{
@@ -72,11 +100,21 @@ public class Main {
 		else
 		{
 			List<Test> tests = ip.parse(args[0]);
+			OutputParser op = new OutputParser(ip.getFormat()); // l'output e' scritto nel formato dell'input
 			List<Sequence> s;
+			ParallelRunner runner = null;
+			List<Future<List<Sequence>>> results = null;
+			if (parallel)
+			{
+				for (Test t : tests) t.setOptions(options);
+				runner = new ParallelRunner();
+				results = runner.submitAll(tests);
+			}
 			for (int x = 0; x < tests.size(); x++)
 			{
 				Test t = tests.get(x);
-				s = t.run();
+				t.setOptions(options);
+				s = parallel? runner.get(results.get(x)): t.run();
 				op.parse(s);
 				if (draw)
 					{
@@ -88,9 +126,10 @@ public class Main {
 					else saveImage(args[0], "test "+ (x+1), draw(t.getWidth(), t.getHeight(), s, t.getFigures()));
 						
 					}
-				System.gc();
 				if (DEBUG) System.out.println("OK test "+ (x+1));
+				if (stats) System.out.println("test " + (x+1) + ": " + t.getSummary());
 			}
+			if (parallel) runner.shutdown();
 			op.write("output.bin");
 		}
 		System.out.println((System.nanoTime()- time)/1000000000f + " Seconds");
@@ -109,9 +148,9 @@ public class Main {
 		for (Sequence s : figures)
 		{
 			int node;
-			for (int x : s)
+			for (int i = 0; i < s.size(); i++)
 			{
-				node = x;
+				node = s.get(i);
 				g2.fillRect(((node/4)/(height))*5, ((node/4)%(height))*5, 5, 5);
 			}
 		}
@@ -123,9 +162,9 @@ public class Main {
 			//Iterator<Node> i = s.iterator();
 			//Node node;
 			int node;
-			for (int x : s)
+			for (int i = 0; i < s.size(); i++)
 			{
-				node = x;
+				node = s.get(i);
 				if(verify) g2.fillRect(((node/4)/(height))*5, ((node/4)%(height))*5, 5, 5);
 				else g2.fillRect((((node & 0xFFFFFFFC)/4)/(height))*5, (((node & 0xFFFFFFFC)/4)%(height))*5, 5, 5);
 			}
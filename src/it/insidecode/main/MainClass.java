@@ -1,13 +1,10 @@
 package it.insidecode.main;
 
-import it.insidecode.parser.InputParser;
-import it.insidecode.parser.OutputParser;
+import it.insidecode.core.BufferPool;
+import it.insidecode.core.RoutingOptions;
 import it.insidecode.parser.ParsingException;
-import it.insidecode.parser.Sequence;
-import it.insidecode.parser.Test;
 
 import java.io.IOException;
-import java.util.List;
 
 /**
  * La classe responsabile della gestione di tutte le componenti del progetto.
@@ -17,19 +14,21 @@ import java.util.List;
  */
 public class MainClass 
 {
-	public static void main(String[] args) throws ParsingException, IOException 
+	public static void main(String[] args) throws ParsingException, IOException, InterruptedException 
 	{
-		InputParser ip = new InputParser();
-		OutputParser op = new OutputParser();
-		List<Test> tests = ip.parse("input.bin");
-		List<Sequence> s;
-		for (int x = 0; x < tests.size(); x++)
+		// i casi test sono indipendenti: li leggiamo uno alla volta, li eseguiamo in parallelo
+		// e ne scriviamo i risultati nell'ordine originale non appena disponibili
+		// gli array dei grafi e dei router dei casi test terminati vengono riutilizzati dai successivi
+		ParallelRunner runner = new ParallelRunner();
+		RoutingOptions options = new RoutingOptions();
+		options.setPool(new BufferPool());
+		try
 		{
-			Test t = tests.get(x);
-			s = t.run();
-			op.parse(s);
-			System.gc();
+			new Pipeline(runner, options).run("input.bin", "output.bin");
+		}
+		finally
+		{
+			runner.shutdown();
 		}
-		op.write("output.bin");
 	}
 }
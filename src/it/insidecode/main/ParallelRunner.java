@@ -0,0 +1,142 @@
+package it.insidecode.main;
+
+import it.insidecode.parser.Sequence;
+import it.insidecode.parser.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Esegue i casi test in parallelo su un numero limitato di thread. Ogni caso
+ * test costruisce il proprio grafo e il proprio router e non condivide nulla
+ * con gli altri, per cui puo' essere eseguito indipendentemente. Oltre al
+ * numero di thread e' limitata anche la memoria: prima di essere eseguito ogni
+ * caso test riserva la memoria stimata da {@link Test#estimateMemory()} e la
+ * rilascia al termine, in modo che i casi test piu' grandi non vengano
+ * eseguiti contemporaneamente se non c'e' spazio sufficiente nello heap.
+ * I risultati vengono restituiti come {@link Future} nello stesso ordine dei
+ * casi test, cosi' che l'output possa essere scritto nell'ordine originale.
+ * 
+ * @author fscozzafava
+ * 
+ */
+public class ParallelRunner {
+
+	/**
+	 * Frazione dello heap che i casi test in esecuzione possono occupare
+	 */
+	private static final double MEMORY_FRACTION = 0.75;
+
+	/**
+	 * Pool di thread che esegue i casi test
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * Memoria disponibile, in kilobyte
+	 */
+	private Semaphore memory;
+
+	/**
+	 * Memoria complessivamente disponibile, in kilobyte
+	 */
+	private int budget;
+
+	/**
+	 * Un nuovo {@link ParallelRunner} usa un thread per ogni processore e una
+	 * parte dello heap massimo della JVM
+	 */
+	public ParallelRunner() {
+		this(Runtime.getRuntime().availableProcessors(), (long) (Runtime
+				.getRuntime().maxMemory() * MEMORY_FRACTION));
+	}
+
+	/**
+	 * Un nuovo {@link ParallelRunner} e' costruito con il numero di thread e
+	 * la memoria (in byte) che i casi test in esecuzione possono occupare
+	 * 
+	 * @param threads
+	 *            il numero di thread
+	 * @param memory
+	 *            la memoria disponibile in byte
+	 */
+	public ParallelRunner(int threads, long memory) {
+		executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		budget = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memory / 1024));
+		this.memory = new Semaphore(budget);
+	}
+
+	/**
+	 * Sottomette un caso test all'esecuzione
+	 * 
+	 * @param test
+	 *            il caso test
+	 * @return il risultato futuro del caso test
+	 */
+	public Future<List<Sequence>> submit(final Test test) {
+		// un caso test piu' grande della memoria disponibile viene eseguito da solo
+		final int permits = (int) Math.max(1,
+				Math.min(budget, test.estimateMemory() / 1024));
+		return executor.submit(new Callable<List<Sequence>>() {
+			@Override
+			public List<Sequence> call() throws InterruptedException {
+				memory.acquire(permits);
+				try {
+					return test.run();
+				} finally {
+					memory.release(permits);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Sottomette all'esecuzione una lista di casi test
+	 * 
+	 * @param tests
+	 *            i casi test
+	 * @return i risultati futuri, nello stesso ordine dei casi test
+	 */
+	public List<Future<List<Sequence>>> submitAll(List<Test> tests) {
+		List<Future<List<Sequence>>> res = new ArrayList<Future<List<Sequence>>>();
+		for (Test t : tests)
+			res.add(submit(t));
+		return res;
+	}
+
+	/**
+	 * Attende il risultato di un caso test
+	 * 
+	 * @param result
+	 *            il risultato futuro
+	 * @return la lista dei cammini calcolati
+	 * @throws InterruptedException
+	 *             se l'attesa viene interrotta
+	 */
+	public List<Sequence> get(Future<List<Sequence>> result)
+			throws InterruptedException {
+		try {
+			return result.get();
+		} catch (ExecutionException e) {
+			// rilanciamo l'errore avvenuto durante l'esecuzione del caso test
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Termina i thread del pool una volta eseguiti i casi test sottomessi
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,116 @@
+package it.insidecode.main;
+
+import it.insidecode.core.RoutingOptions;
+import it.insidecode.parser.InputParser;
+import it.insidecode.parser.OutputParser;
+import it.insidecode.parser.ParsingException;
+import it.insidecode.parser.Sequence;
+import it.insidecode.parser.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Esegue i casi test di un file di input in streaming: i casi test vengono
+ * letti uno alla volta, sottomessi ad un {@link ParallelRunner} e i loro
+ * risultati scritti sul file di output non appena disponibili, nell'ordine
+ * originale. In ogni momento sono in memoria al piu' {@link #window} casi test
+ * (letti, in esecuzione o in attesa di essere scritti), per cui la memoria
+ * occupata non dipende dal numero di casi test presenti nel file.
+ *
+ * @author fscozzafava
+ *
+ */
+public class Pipeline {
+
+	/**
+	 * Runner che esegue i casi test
+	 */
+	private ParallelRunner runner;
+
+	/**
+	 * Opzioni con cui vengono eseguiti i casi test
+	 */
+	private RoutingOptions options;
+
+	/**
+	 * Numero massimo di casi test in memoria contemporaneamente
+	 */
+	private int window;
+
+	/**
+	 * Una nuova {@link Pipeline} tiene in memoria un caso test in piu' del
+	 * numero di processori, cosi' che il prossimo sia gia' letto quando un
+	 * thread si libera
+	 *
+	 * @param runner
+	 *            il runner che esegue i casi test
+	 * @param options
+	 *            le opzioni di routing
+	 */
+	public Pipeline(ParallelRunner runner, RoutingOptions options) {
+		this(runner, options, Runtime.getRuntime().availableProcessors() + 1);
+	}
+
+	/**
+	 * Una nuova {@link Pipeline}
+	 *
+	 * @param runner
+	 *            il runner che esegue i casi test
+	 * @param options
+	 *            le opzioni di routing
+	 * @param window
+	 *            il numero massimo di casi test in memoria contemporaneamente
+	 */
+	public Pipeline(ParallelRunner runner, RoutingOptions options, int window) {
+		this.runner = runner;
+		this.options = options;
+		this.window = Math.max(1, window);
+	}
+
+	/**
+	 * Legge i casi test dal file di input, li esegue e ne scrive i risultati
+	 * sul file di output
+	 *
+	 * @param input
+	 *            il file di input
+	 * @param output
+	 *            il file di output
+	 * @throws ParsingException
+	 *             nel caso in cui il file di input presenti irregolarita'
+	 * @throws IOException
+	 *             in caso di errori di lettura o scrittura
+	 * @throws InterruptedException
+	 *             se l'attesa di un risultato viene interrotta
+	 */
+	public void run(String input, String output) throws ParsingException,
+			IOException, InterruptedException {
+		InputParser ip = new InputParser();
+		OutputParser op = null;
+		ArrayDeque<Future<List<Sequence>>> pending = new ArrayDeque<Future<List<Sequence>>>();
+		try {
+			ip.open(input);
+			// l'output e' scritto nello stesso formato dell'input
+			op = new OutputParser(output, ip.getFormat());
+			while (ip.hasNext()) {
+				// la finestra e' piena: scriviamo il risultato piu' vecchio prima di leggere il prossimo caso test
+				if (pending.size() == window)
+					op.parse(runner.get(pending.poll()));
+				Test t = ip.next();
+				t.setOptions(options);
+				pending.add(runner.submit(t));
+			}
+			while (!pending.isEmpty())
+				op.parse(runner.get(pending.poll()));
+		} finally {
+			// in caso di errore i casi test gia' sottomessi non servono piu'
+			for (Future<List<Sequence>> f : pending)
+				f.cancel(true);
+			ip.close();
+			if (op != null)
+				op.close();
+		}
+	}
+}
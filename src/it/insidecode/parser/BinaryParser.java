@@ -1,8 +1,5 @@
 package it.insidecode.parser;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -10,23 +7,23 @@ import java.util.List;
 public class BinaryParser
 {
 	/**
-	 * Stream di input del file
+	 * Lettore del file
 	 */
-	private FileInputStream stream;
+	private BinaryReader reader;
 	
 	/**
 	 * Contatore globale dei byte letti
 	 */
 	private int currentIndex = 0;
 	
-	public BinaryParser(String string) {
-		File file = new File(string);
-		try {
-			stream = new FileInputStream(file);
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+	/**
+	 * Un nuovo {@link BinaryParser} e' costruito con il path del file da leggere
+	 * 
+	 * @param string path del file
+	 * @throws IOException nel caso in cui il file non esista
+	 */
+	public BinaryParser(String string) throws IOException {
+		reader = new BinaryReader(string);
 	}
 
 
@@ -63,10 +60,8 @@ public class BinaryParser
 				int val;
 				while((val = readByte()) > 0) // il byte 0 rappresenta la fine di una sequenza
 				{
-					Integer[] nodes = parseNextNode(node, gridHeight, val);
-					if (nodes.length < 1) break;
-					node = nodes[nodes.length-1]; // mi salvo l'ultimo nodo della sequenza per il calcolo successivo
-					s.addNodes(nodes); // aggiungo alla sequenza la lista parziale dei nodi
+					if (val >> 3 == 0) break;
+					node = parseNextNodes(s, node, gridHeight, val); // aggiungo alla sequenza i nodi e mi salvo l'ultimo per il calcolo successivo
 				}
 				lastVal =val;
 				tests.add(s); // aggiungo la figura al test
@@ -78,51 +73,45 @@ public class BinaryParser
 	
 
 	/**
-	 * Dato un nodo, l'altezza della griglia e il valore da decodificare, crea e restituisce la sequenza di k nodi in
+	 * Dato un nodo, l'altezza della griglia e il valore da decodificare, aggiunge in coda alla sequenza i k nodi in
 	 * direzione d dal nodo indicato.
 	 * 
+	 * @param s la sequenza a cui aggiungere i nodi
 	 * @param node il nodo di partenza
 	 * @param height l'altezza della griglia
 	 * @param val il valore da decodificare
-	 * @return una sequenza di k nodi in direzione d
+	 * @return l'ultimo nodo aggiunto
 	 */
-	private Integer[] parseNextNode(int node, int height, int val) {
-		Direction d = Direction.values()[val & 0x07]; // prendo i 3 bit meno significativi di val e ricavo la direzione
-		int k = val >> 3; // prendo i bit piu' significativi e ricavo il numero di nodi da istanziare
-		Integer[] array = new Integer[k];
-		int x = node/4/height; // ricavo la componente x dal nodo
-		int y = (node/4)%height; // ricavo la componente y dal nodo
+	private int parseNextNodes(Sequence s, int node, int height, int val) {
+		Direction d = Direction.byOrdinal(val & 0x07); // prendo i 3 bit meno significativi di val e ricavo la direzione
+		int k = val >> 3; // prendo i bit piu' significativi e ricavo il numero di nodi da aggiungere
+		int step = (d.getDx()*height + d.getDy())*4; // distanza tra due nodi consecutivi in direzione d
 		for(int i = 0; i < k; i++) 
-			array[i] = ((x+(i+1)*d.getDx())*height + (y+(i+1)*d.getDy()))*4;
-		return array;
+			s.addLast(node += step);
+		return node;
 	}
 
 	/**
 	 * Ritorna un valore intero rappresentato da due byte consecutivi
 	 * 
 	 * @return il prossimo valore nel file binario
+	 * @throws ParsingException se il file e' terminato
 	 */
-	private int parseNextValue()
+	private int parseNextValue() throws ParsingException
 	{
-		return 256 * readByte() + readByte();
+		currentIndex += 2; //incremento l'indice dei byte letti
+		return reader.readValue();
 	}
 	
 	/**
-	 * Legge il prossimo byte dallo stream di input
+	 * Legge il prossimo byte dal file
 	 * 
 	 * @return il prossimo byte nel file binario
+	 * @throws ParsingException se il file e' terminato
 	 */
-	private int readByte()
+	private int readByte() throws ParsingException
 	{
 		currentIndex++; //incremento l'indice dei byte letti
-		try 
-		{
-			return stream.read() & 0xff; // fix per ovviare all'implementazione dei signed byte in java
-		} 
-		catch(IOException e) 
-		{
-			e.printStackTrace();
-		}
-		return -1; //in caso di errore ritorno -1
+		return reader.readByte();
 	}
 }
@@ -0,0 +1,198 @@
+package it.insidecode.parser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Lettore sequenziale di un file binario. Il file non viene letto un byte
+ * alla volta ma mappato in memoria tramite un {@link FileChannel} a finestre
+ * di dimensione fissa, per cui i valori vengono decodificati direttamente dal
+ * buffer senza una chiamata di sistema per ogni byte e senza dover caricare
+ * l'intero file nello heap. Il tentativo di leggere oltre la fine del file
+ * provoca una {@link ParsingException}.
+ * 
+ * @author Federico Scozzafava
+ * 
+ */
+public class BinaryReader implements Closeable {
+
+	/**
+	 * Dimensione massima di una finestra di mappatura
+	 */
+	private static final int WINDOW = 1 << 24;
+
+	/**
+	 * Canale del file
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Buffer dal quale vengono letti i byte
+	 */
+	protected ByteBuffer buffer;
+
+	/**
+	 * Numero di byte che precedono il buffer corrente
+	 */
+	protected long offset;
+
+	/**
+	 * Istanzia un nuovo lettore del file indicato
+	 * 
+	 * @param path
+	 *            path del file
+	 * @throws IOException
+	 *             nel caso in cui il file non esista o non sia leggibile
+	 */
+	public BinaryReader(String path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(new File(path), "r");
+		channel = file.getChannel();
+		buffer = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * Istanzia un lettore senza file associato, le sottoclassi forniscono i
+	 * byte tramite {@link #fill()}
+	 */
+	protected BinaryReader() {
+		buffer = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * Rende disponibili nel buffer i byte successivi a quelli gia' letti
+	 * 
+	 * @return false se non ci sono altri byte da leggere
+	 * @throws IOException
+	 */
+	protected boolean fill() throws IOException {
+		long next = offset + buffer.limit();
+		long size = channel.size();
+		if (next >= size)
+			return false;
+		// mappiamo la finestra successiva del file
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, next,
+				Math.min(WINDOW, size - next));
+		offset = next;
+		return true;
+	}
+
+	/**
+	 * Legge il prossimo byte
+	 * 
+	 * @return il prossimo byte nel file binario, come valore tra 0 e 255
+	 * @throws ParsingException
+	 *             se il file e' terminato
+	 */
+	public int readByte() throws ParsingException {
+		if (!buffer.hasRemaining())
+			ensure();
+		return buffer.get() & 0xff; // fix per ovviare all'implementazione dei signed byte in java
+	}
+
+	/**
+	 * Ritorna un valore intero rappresentato da due byte consecutivi
+	 * 
+	 * @return il prossimo valore nel file binario
+	 * @throws ParsingException
+	 *             se il file e' terminato
+	 */
+	public int readValue() throws ParsingException {
+		if (buffer.remaining() >= 2)
+			return buffer.getShort() & 0xffff; // i byte sono in ordine big-endian come nel file
+		return 256 * readByte() + readByte();
+	}
+
+	/**
+	 * Ritorna un intero senza segno codificato a lunghezza variabile: 7 bit per
+	 * byte a partire dai meno significativi, con il bit piu' significativo
+	 * impostato in tutti i byte tranne l'ultimo
+	 * 
+	 * @return il prossimo valore nel file binario
+	 * @throws ParsingException
+	 *             se il file e' terminato o il valore supera
+	 *             {@link Integer#MAX_VALUE}
+	 */
+	public int readVarint() throws ParsingException {
+		long res = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			res |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				if (res > Integer.MAX_VALUE)
+					break;
+				return (int) res;
+			}
+		}
+		throw new ParsingException("variable-length value too large at byte "
+				+ position());
+	}
+
+	/**
+	 * Se i prossimi byte coincidono con quelli indicati li consuma, altrimenti
+	 * lascia invariata la posizione di lettura
+	 * 
+	 * @param prefix
+	 *            i byte attesi
+	 * @return true se i byte sono stati trovati e consumati
+	 * @throws IOException
+	 */
+	public boolean skip(byte[] prefix) throws IOException {
+		if (!buffer.hasRemaining() && !fill())
+			return false;
+		// il confronto avviene all'interno del buffer corrente, che all'inizio del file contiene
+		// almeno i primi byte
+		if (buffer.remaining() < prefix.length)
+			return false;
+		int p = buffer.position();
+		for (int i = 0; i < prefix.length; i++)
+			if (buffer.get(p + i) != prefix[i])
+				return false;
+		buffer.position(p + prefix.length);
+		return true;
+	}
+
+	/**
+	 * @return il numero di byte letti dall'inizio del file
+	 */
+	public long position() {
+		return offset + buffer.position();
+	}
+
+	/**
+	 * Ritorna un valore che indica se ci sono altri byte da leggere
+	 * 
+	 * @return se il file non e' terminato
+	 * @throws IOException
+	 */
+	public boolean hasRemaining() throws IOException {
+		return buffer.hasRemaining() || fill();
+	}
+
+	/**
+	 * Si assicura che nel buffer ci sia almeno un byte da leggere
+	 * 
+	 * @throws ParsingException
+	 *             se il file e' terminato o non e' leggibile
+	 */
+	private void ensure() throws ParsingException {
+		try {
+			if (fill())
+				return;
+		} catch (IOException e) {
+			throw new ParsingException("I/O error at byte " + position() + " ("
+					+ e.getMessage() + ")");
+		}
+		throw new ParsingException("unexpected end of file at byte "
+				+ position());
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null)
+			channel.close();
+	}
+}
@@ -20,6 +20,22 @@ public enum Direction {
 	private int dx;
 	private int dy;
 	
+	/**
+	 * Direzioni indicizzate per ordinale, senza la copia effettuata da {@link #values()}
+	 */
+	private static final Direction[] VALUES = values();
+	
+	/**
+	 * Direzioni indicizzate per spostamento, in posizione (dx+1)*3 + (dy+1)
+	 */
+	private static final Direction[] BY_DELTA = new Direction[9];
+	
+	static
+	{
+		for (Direction d : VALUES)
+			BY_DELTA[(d.dx+1)*3 + (d.dy+1)] = d;
+	}
+	
 	private Direction(int dx, int dy)
 	{
 		this.dx = dx;
@@ -30,6 +46,12 @@ public enum Direction {
 	
 	public int getDy() { return dy;}
 	
+	/**
+	 * @param ordinal l'ordinale della direzione
+	 * @return la direzione con l'ordinale indicato
+	 */
+	public static Direction byOrdinal(int ordinal) { return VALUES[ordinal];}
+	
 	/**
 	 * Date le coordinate di due nodi nella griglia ritorna la direzione dell'arco che li collega
 	 * 
@@ -41,12 +63,9 @@ public enum Direction {
 	 */
 	public static Direction getDirection(int x1, int y1, int x2, int y2)
 	{
-		int x = x2 - x1;
-		int y = y2 - y1;
-		for(Direction d : Direction.values())
-		{
-			if (d.dx == x && d.dy == y) return d;
-		}
-		return null;
+		int x = x2 - x1 + 1;
+		int y = y2 - y1 + 1;
+		if (x < 0 || x > 2 || y < 0 || y > 2) return null;
+		return BY_DELTA[x*3 + y];
 	}
 }
@@ -0,0 +1,93 @@
+package it.insidecode.parser;
+
+import java.util.Locale;
+
+/**
+ * I formati dei file di input e di output.
+ * <p>
+ * Il formato originale ({@link #LEGACY}) codifica dimensioni, coordinate e
+ * lunghezze dei blocchi con due byte senza segno, per cui griglie e blocchi
+ * sono limitati a 65535. Il formato esteso inizia con un'intestazione di 6
+ * byte: i 4 byte di {@link #MAGIC}, la versione del formato e un byte di flag
+ * (il bit 0 indica che il resto del file e' compresso con DEFLATE). Dopo
+ * l'intestazione tutti i valori sono interi senza segno a lunghezza variabile
+ * (7 bit per byte, a partire dai meno significativi, con il bit piu'
+ * significativo impostato in tutti i byte tranne l'ultimo):
+ * <ul>
+ * <li>input: il numero di casi test, e per ognuno larghezza, altezza, numero
+ * di figure, le figure (coordinate x e y del primo nodo, sequenze di nodi
+ * come {@code k << 3 | d} senza limite su k, 0 come terminatore), numero di
+ * coppie e le coordinate x1, y1, x2, y2 di ogni coppia</li>
+ * <li>output: le sequenze una dopo l'altra, ognuna codificata come 0 se
+ * vuota, altrimenti x + 1, y e le sequenze di nodi seguite dal terminatore
+ * come per le figure</li>
+ * </ul>
+ * Un file nel formato originale che inizi con gli stessi byte di
+ * {@link #MAGIC} dovrebbe contenere oltre 35000 casi test, per cui i due
+ * formati si distinguono dai primi byte del file.
+ *
+ * @author Federico Scozzafava
+ *
+ */
+public enum Format {
+	/**
+	 * Formato originale a valori di due byte
+	 */
+	LEGACY,
+	/**
+	 * Formato esteso a valori di lunghezza variabile
+	 */
+	EXTENDED,
+	/**
+	 * Formato esteso compresso con DEFLATE
+	 */
+	DEFLATE;
+
+	/**
+	 * Byte iniziali di un file nel formato esteso
+	 */
+	static final byte[] MAGIC = { (byte) 0x89, 'I', 'C', 'F' };
+
+	/**
+	 * Versione del formato esteso scritta nell'intestazione
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Flag dell'intestazione che indica la compressione DEFLATE
+	 */
+	static final int FLAG_DEFLATE = 1;
+
+	/**
+	 * @return true se il formato e' quello esteso, compresso o meno
+	 */
+	public boolean isExtended() {
+		return this != LEGACY;
+	}
+
+	/**
+	 * @return l'intestazione dei file in questo formato (vuota per il formato
+	 *         originale)
+	 */
+	public byte[] header() {
+		if (!isExtended())
+			return new byte[0];
+		byte[] res = new byte[MAGIC.length + 2];
+		System.arraycopy(MAGIC, 0, res, 0, MAGIC.length);
+		res[MAGIC.length] = VERSION;
+		res[MAGIC.length + 1] = (byte) (this == DEFLATE ? FLAG_DEFLATE : 0);
+		return res;
+	}
+
+	/**
+	 * @param name
+	 *            il nome del formato, senza distinzione tra maiuscole e
+	 *            minuscole
+	 * @return il formato
+	 * @throws IllegalArgumentException
+	 *             se il formato non esiste
+	 */
+	public static Format byName(String name) {
+		return valueOf(name.toUpperCase(Locale.ROOT));
+	}
+}
@@ -1,13 +1,16 @@
 package it.insidecode.parser;
-import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.InflaterInputStream;
 
 
 /**
- * Classe responsabile della lettura e decodifica del file binario contenente i casi test.
+ * Classe responsabile della lettura e decodifica del file binario contenente i casi test. Il file puo' essere
+ * nel formato originale o in quello esteso ({@link Format}), riconosciuto dai primi byte; in entrambi i casi
+ * viene letto in modo sequenziale senza caricarlo per intero in memoria.
  * 
  * @author Federico Scozzafava
  *
@@ -15,15 +18,25 @@ import java.util.List;
 public class InputParser 
 {
 	/**
-	 * Stream di input del file
+	 * Lettore del file
 	 */
-	private FileInputStream stream;
+	private BinaryReader reader;
 	
 	/**
 	 * Contatore globale dei byte letti
 	 */
 	private int currentIndex = 0;
 	
+	/**
+	 * Numero di casi test non ancora letti dal file aperto con {@link #open(String)}
+	 */
+	private int remaining = 0;
+	
+	/**
+	 * Formato del file aperto con {@link #open(String)}
+	 */
+	private Format format = Format.LEGACY;
+	
 	/**
 	 * Preso in input il path relativo del file da esaminare, restituisce in output la lista di {@link Test} rappresentate i casi test codificati dal file.
 	 * 
@@ -34,102 +47,251 @@ public class InputParser
 	 */
 	public List<Test> parse(String path) throws ParsingException, IOException
 	{	
-		File file = new File(path);
-		stream = new FileInputStream(file);
 		List<Test> tests = new ArrayList<Test>(); //alloco una lista che conterra' i casi test
-		int N = parseNextValue(); //numero di casi test (il primo byte del file)
-		for (int i = 0; i < N; i++)
+		open(path);
+		try
+		{
+			while (hasNext())
+				tests.add(next()); // aggiungo il test alla lista dei casi test
+		}
+		finally
+		{
+			close(); //chiudo il file e rilascio le risorse
+		}
+		return tests;
+	}
+	
+	/**
+	 * Apre il file da esaminare per leggerne i casi test uno alla volta tramite {@link #next()}, senza
+	 * doverli mantenere tutti in memoria
+	 * 
+	 * @param path path del file
+	 * @return il numero di casi test codificati nel file
+	 * @throws ParsingException nel caso in cui il file di input presenti irregolarita'
+	 * @throws IOException nel caso in cui il file non esista o sia danneggiato
+	 */
+	public int open(String path) throws ParsingException, IOException
+	{
+		reader = new BinaryReader(path);
+		format = Format.LEGACY;
+		try
+		{
+			if (reader.skip(Format.MAGIC)) openExtended(path);
+			remaining = format.isExtended()? reader.readVarint(): parseNextValue(); //numero di casi test
+		}
+		catch (ParsingException e)
 		{
-			currentIndex = 0; //indice di byte letti relativo al singolo caso test
-			int gridWidth = parseNextValue();
-			int gridHeight = parseNextValue();
-			Test test = new Test(gridWidth, gridHeight); 
-			/*creo un'istanza di Test con altezza e larghezza 
-			al quale aggiungero' le figure e i punti 
-			da aggiungere una volta effettuato il parsing*/
-			int n1= parseNextValue(); //lunghezza del blocco BLK2 (figure)
-			int n2 = parseNextValue(); //lunghezza del blocco BLK3 (estremi da collegare)
-			
-			while (currentIndex < n1+8) //faccio il parsing degli elmenti E1, E2, ... , Ek
+			close();
+			throw e;
+		}
+		catch (IOException e)
+		{
+			close();
+			throw e;
+		}
+		return remaining;
+	}
+	
+	/**
+	 * Legge il resto dell'intestazione di un file nel formato esteso, di cui sono gia' stati letti i byte iniziali,
+	 * e se il file e' compresso sostituisce il lettore con uno che ne decomprime il contenuto
+	 * 
+	 * @param path path del file
+	 * @throws ParsingException se la versione del formato non e' supportata
+	 * @throws IOException
+	 */
+	private void openExtended(String path) throws ParsingException, IOException
+	{
+		int version = reader.readByte();
+		if (version != Format.VERSION) throw new ParsingException("unsupported format version " + version);
+		int flags = reader.readByte();
+		format = (flags & Format.FLAG_DEFLATE) != 0? Format.DEFLATE: Format.EXTENDED;
+		if (format == Format.DEFLATE)
+		{
+			long start = reader.position();
+			reader.close();
+			reader = null;
+			InputStream in = new FileInputStream(path);
+			try
 			{
-				Sequence s = new Sequence(gridHeight); //istanzio una nuova sequenza che rappresentera' il contorno di una figura
-				int firstNode = (parseNextValue()*gridHeight + parseNextValue())*4; 
-				/*il primo nodo della sequenza e' rappresentato da una coppia di coordinate x e y
-				ogni nodo, nella rappresentazione del grafo, e' identificato da un intero costruito nel seguente modo:
-				((x*h+y)*4)*/
-				s.addNode(firstNode);
-				int node = firstNode;
-				int val;
-				while((val = readByte()) > 0) // il byte 0 rappresenta la fine di una sequenza
-				{
-					Integer[] nodes = parseNextNode(node, gridHeight, val);
-					node = nodes[nodes.length-1]; // mi salvo l'ultimo nodo della sequenza per il calcolo successivo
-					s.addNodes(nodes); // aggiungo alla sequenza la lista parziale dei nodi
-				}
-				test.addFigure(s); // aggiungo la figura al test
+				for (long n = start; n > 0; n -= in.skip(n));
 			}
-			if(currentIndex != 8+n1) throw new ParsingException("index > 8+N1 - Error parsing BLK2 block");
-			for (int z = 0; z < n2/8; z++) //faccio il parsing degli estremi da collegare
+			catch (IOException e)
 			{
-				//8byte di cui 4 per le coordinate del primo punto, 4 per il secondo
-				int node1 = (parseNextValue()*gridHeight + parseNextValue())*4;
-				int node2 = (parseNextValue()*gridHeight + parseNextValue())*4;
-				test.addNodePair(new Pair<Integer>(node1, node2)); // aggiungo la coppia di nodi al test
+				in.close();
+				throw e;
 			}
-			if(currentIndex != 8+n1+n2) throw new ParsingException("index > 8+N1+N2 - Error parsing BLK3 block");
-			tests.add(test); // aggiungo il test alla lista dei casi test
+			reader = new StreamReader(new InflaterInputStream(in));
 		}
-		stream.close(); //chiudo il file stream e rilascio le risorse
-		return tests;
 	}
 	
-
 	/**
-	 * Dato un nodo, l'altezza della griglia e il valore da decodificare, crea e restituisce la sequenza di k nodi in
+	 * @return il formato del file aperto con {@link #open(String)} (o dell'ultimo file letto)
+	 */
+	public Format getFormat()
+	{
+		return format;
+	}
+	
+	/**
+	 * @return true se nel file aperto ci sono ancora casi test da leggere
+	 */
+	public boolean hasNext()
+	{
+		return remaining > 0;
+	}
+	
+	/**
+	 * Effettua il parsing del prossimo caso test del file aperto
+	 * 
+	 * @return il caso test
+	 * @throws ParsingException nel caso in cui il file di input presenti irregolarita' o non ci siano altri casi test
+	 */
+	public Test next() throws ParsingException
+	{
+		if (remaining <= 0) throw new ParsingException("no more test cases");
+		remaining--;
+		if (format.isExtended()) return nextExtended();
+		currentIndex = 0; //indice di byte letti relativo al singolo caso test
+		int gridWidth = parseNextValue();
+		int gridHeight = parseNextValue();
+		checkGrid(gridWidth, gridHeight);
+		Test test = new Test(gridWidth, gridHeight); 
+		/*creo un'istanza di Test con altezza e larghezza 
+		al quale aggiungero' le figure e i punti 
+		da aggiungere una volta effettuato il parsing*/
+		int n1= parseNextValue(); //lunghezza del blocco BLK2 (figure)
+		int n2 = parseNextValue(); //lunghezza del blocco BLK3 (estremi da collegare)
+		
+		while (currentIndex < n1+8) //faccio il parsing degli elmenti E1, E2, ... , Ek
+		{
+			Sequence s = new Sequence(gridHeight); //istanzio una nuova sequenza che rappresentera' il contorno di una figura
+			int firstNode = (parseNextValue()*gridHeight + parseNextValue())*4; 
+			/*il primo nodo della sequenza e' rappresentato da una coppia di coordinate x e y
+			ogni nodo, nella rappresentazione del grafo, e' identificato da un intero costruito nel seguente modo:
+			((x*h+y)*4)*/
+			s.addNode(firstNode);
+			int node = firstNode;
+			int val;
+			while((val = readByte()) > 0) // il byte 0 rappresenta la fine di una sequenza
+			{
+				if (val >> 3 == 0) throw new ParsingException("empty run in figure at byte " + currentIndex);
+				node = parseNextNodes(s, node, gridHeight, val); // aggiungo alla sequenza i nodi e mi salvo l'ultimo per il calcolo successivo
+			}
+			test.addFigure(s); // aggiungo la figura al test
+		}
+		if(currentIndex != 8+n1) throw new ParsingException("index > 8+N1 - Error parsing BLK2 block");
+		for (int z = 0; z < n2/8; z++) //faccio il parsing degli estremi da collegare
+		{
+			//8byte di cui 4 per le coordinate del primo punto, 4 per il secondo
+			int node1 = (parseNextValue()*gridHeight + parseNextValue())*4;
+			int node2 = (parseNextValue()*gridHeight + parseNextValue())*4;
+			test.addNodePair(new Pair<Integer>(node1, node2)); // aggiungo la coppia di nodi al test
+		}
+		if(currentIndex != 8+n1+n2) throw new ParsingException("index > 8+N1+N2 - Error parsing BLK3 block");
+		return test;
+	}
+	
+	/**
+	 * Effettua il parsing del prossimo caso test di un file nel formato esteso, in cui i blocchi sono preceduti
+	 * dal numero di elementi invece che dalla loro lunghezza in byte
+	 * 
+	 * @return il caso test
+	 * @throws ParsingException nel caso in cui il file di input presenti irregolarita'
+	 */
+	private Test nextExtended() throws ParsingException
+	{
+		int gridWidth = reader.readVarint();
+		int gridHeight = reader.readVarint();
+		checkGrid(gridWidth, gridHeight);
+		Test test = new Test(gridWidth, gridHeight);
+		for (int f = reader.readVarint(); f > 0; f--) //faccio il parsing delle figure
+		{
+			Sequence s = new Sequence(gridHeight);
+			int node = (reader.readVarint()*gridHeight + reader.readVarint())*4;
+			s.addNode(node);
+			int val;
+			while((val = reader.readVarint()) > 0) // il valore 0 rappresenta la fine di una sequenza
+			{
+				if (val >> 3 == 0) throw new ParsingException("empty run in figure at byte " + reader.position());
+				node = parseNextNodes(s, node, gridHeight, val);
+			}
+			test.addFigure(s);
+		}
+		for (int p = reader.readVarint(); p > 0; p--) //faccio il parsing degli estremi da collegare
+		{
+			int node1 = (reader.readVarint()*gridHeight + reader.readVarint())*4;
+			int node2 = (reader.readVarint()*gridHeight + reader.readVarint())*4;
+			test.addNodePair(new Pair<Integer>(node1, node2));
+		}
+		return test;
+	}
+	
+	/**
+	 * Verifica che i {@code node} di una griglia delle dimensioni indicate possano essere identificati da un intero
+	 * 
+	 * @param width la larghezza della griglia
+	 * @param height l'altezza della griglia
+	 * @throws ParsingException se la griglia e' troppo grande
+	 */
+	private void checkGrid(int width, int height) throws ParsingException
+	{
+		if ((long) width * height * 4 > Integer.MAX_VALUE)
+			throw new ParsingException("grid " + width + "x" + height + " is too large");
+	}
+	
+	/**
+	 * Chiude il file aperto e rilascia le risorse
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		remaining = 0;
+		if (reader != null) reader.close();
+		reader = null;
+	}
+	
+	/**
+	 * Dato un nodo, l'altezza della griglia e il valore da decodificare, aggiunge in coda alla sequenza i k nodi in
 	 * direzione d dal nodo indicato.
 	 * 
+	 * @param s la sequenza a cui aggiungere i nodi
 	 * @param node il nodo di partenza
 	 * @param height l'altezza della griglia
 	 * @param val il valore da decodificare
-	 * @return una sequenza di k nodi in direzione d
-	 */
-	private Integer[] parseNextNode(int node, int height, int val) {
-		Direction d = Direction.values()[val & 0x07]; // prendo i 3 bit meno significativi di val e ricavo la direzione
-		int k = val >> 3; // prendo i bit piu' significativi e ricavo il numero di nodi da istanziare
-		Integer[] array = new Integer[k];
-		int x = node/4/height; // ricavo la componente x dal nodo
-		int y = (node/4)%height; // ricavo la componente y dal nodo
+	 * @return l'ultimo nodo aggiunto
+	 */
+	private int parseNextNodes(Sequence s, int node, int height, int val) {
+		Direction d = Direction.byOrdinal(val & 0x07); // prendo i 3 bit meno significativi di val e ricavo la direzione
+		int k = val >> 3; // prendo i bit piu' significativi e ricavo il numero di nodi da aggiungere
+		int step = (d.getDx()*height + d.getDy())*4; // distanza tra due nodi consecutivi in direzione d
 		for(int i = 0; i < k; i++) 
-			array[i] = ((x+(i+1)*d.getDx())*height + (y+(i+1)*d.getDy()))*4;
-		return array;
+			s.addLast(node += step);
+		return node;
 	}
 
 	/**
 	 * Ritorna un valore intero rappresentato da due byte consecutivi
 	 * 
 	 * @return il prossimo valore nel file binario
+	 * @throws ParsingException se il file e' terminato
 	 */
-	private int parseNextValue()
+	private int parseNextValue() throws ParsingException
 	{
-		return 256 * readByte() + readByte();
+		currentIndex += 2; //incremento l'indice dei byte letti
+		return reader.readValue();
 	}
 	
 	/**
-	 * Legge il prossimo byte dallo stream di input
+	 * Legge il prossimo byte dal file di input
 	 * 
 	 * @return il prossimo byte nel file binario
+	 * @throws ParsingException se il file e' terminato
 	 */
-	private int readByte()
+	private int readByte() throws ParsingException
 	{
 		currentIndex++; //incremento l'indice dei byte letti
-		try 
-		{
-			return stream.read() & 0xff; // fix per ovviare all'implementazione dei signed byte in java
-		} 
-		catch(IOException e) 
-		{
-			e.printStackTrace();
-		}
-		return -1; //in caso di errore ritorno -1
+		return reader.readByte();
 	}
 }
@@ -0,0 +1,203 @@
+package it.insidecode.parser;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Sequenza di interi su array primitivo, estendibile in tempo costante
+ * (ammortizzato) ad entrambe le estremita'. Gli elementi occupano la porzione
+ * [head, tail) dell'array: lo spazio libero prima di head permette di
+ * aggiungere elementi in testa senza spostare quelli gia' presenti, come
+ * accade ad esempio quando un cammino viene ricostruito a ritroso dalla
+ * destinazione alla sorgente.
+ *
+ * @author fscozzafava
+ *
+ */
+public class IntSequence {
+
+	/**
+	 * Capacita' iniziale dell'array
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Iteratore sugli elementi di una {@link IntSequence} che restituisce
+	 * valori primitivi
+	 */
+	public interface IntIterator {
+
+		/**
+		 * @return true se ci sono altri elementi
+		 */
+		boolean hasNext();
+
+		/**
+		 * @return il prossimo elemento
+		 */
+		int next();
+	}
+
+	/**
+	 * Elementi della sequenza, in posizione [head, tail)
+	 */
+	private int[] data;
+
+	/**
+	 * Posizione del primo elemento
+	 */
+	private int head;
+
+	/**
+	 * Posizione successiva all'ultimo elemento
+	 */
+	private int tail;
+
+	/**
+	 * Istanzia una nuova sequenza vuota
+	 */
+	public IntSequence() {
+		data = new int[INITIAL_CAPACITY];
+		head = tail = INITIAL_CAPACITY / 2;
+	}
+
+	/**
+	 * Aggiunge un elemento in testa alla sequenza
+	 *
+	 * @param value
+	 *            l'elemento da aggiungere
+	 */
+	public void addFirst(int value) {
+		if (head == 0)
+			grow(1, true);
+		data[--head] = value;
+	}
+
+	/**
+	 * Aggiunge un elemento in coda alla sequenza
+	 *
+	 * @param value
+	 *            l'elemento da aggiungere
+	 */
+	public void addLast(int value) {
+		if (tail == data.length)
+			grow(1, false);
+		data[tail++] = value;
+	}
+
+	/**
+	 * Aggiunge in coda alla sequenza gli elementi indicati
+	 *
+	 * @param values
+	 *            gli elementi da aggiungere
+	 */
+	public void addAll(int... values) {
+		addAll(values, 0, values.length);
+	}
+
+	/**
+	 * Aggiunge in coda alla sequenza {@code length} elementi dell'array
+	 * indicato a partire dalla posizione {@code offset}
+	 *
+	 * @param values
+	 *            l'array degli elementi
+	 * @param offset
+	 *            la posizione del primo elemento da aggiungere
+	 * @param length
+	 *            il numero di elementi da aggiungere
+	 */
+	public void addAll(int[] values, int offset, int length) {
+		if (data.length - tail < length)
+			grow(length, false);
+		System.arraycopy(values, offset, data, tail, length);
+		tail += length;
+	}
+
+	/**
+	 * @param index
+	 *            la posizione dell'elemento
+	 * @return l'elemento in posizione index
+	 */
+	public int get(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("index " + index + ", size "
+					+ size());
+		return data[head + index];
+	}
+
+	/**
+	 * @return il numero di elementi della sequenza
+	 */
+	public int size() {
+		return tail - head;
+	}
+
+	/**
+	 * @return true se la sequenza non contiene elementi
+	 */
+	public boolean isEmpty() {
+		return tail == head;
+	}
+
+	/**
+	 * Rimuove tutti gli elementi della sequenza, mantenendo la memoria
+	 * allocata
+	 */
+	public void clear() {
+		head = tail = data.length / 2;
+	}
+
+	/**
+	 * @return una copia degli elementi della sequenza
+	 */
+	public int[] toArray() {
+		return Arrays.copyOfRange(data, head, tail);
+	}
+
+	/**
+	 * @return un iteratore sugli elementi della sequenza che non effettua
+	 *         boxing
+	 */
+	public IntIterator ints() {
+		return new IntIterator() {
+			private int i = head;
+
+			@Override
+			public boolean hasNext() {
+				return i < tail;
+			}
+
+			@Override
+			public int next() {
+				if (i >= tail)
+					throw new NoSuchElementException();
+				return data[i++];
+			}
+		};
+	}
+
+	/**
+	 * Rialloca l'array in modo che ci sia spazio per almeno {@code needed}
+	 * elementi all'estremita' indicata. Lo spazio libero viene lasciato dalla
+	 * parte in cui la sequenza sta crescendo
+	 *
+	 * @param needed
+	 *            il numero di elementi da aggiungere
+	 * @param front
+	 *            true se gli elementi vanno aggiunti in testa
+	 */
+	private void grow(int needed, boolean front) {
+		int size = size();
+		int capacity = Math.max(data.length * 2, size + needed
+				+ INITIAL_CAPACITY);
+		int[] d = new int[capacity];
+		// tre quarti dello spazio libero vanno dal lato in cui la sequenza cresce
+		int free = capacity - size;
+		int h = front ? Math.max(needed, free - free / 4) : Math.min(free / 4,
+				free - needed);
+		System.arraycopy(data, head, d, h, size);
+		data = d;
+		head = h;
+		tail = h + size;
+	}
+}
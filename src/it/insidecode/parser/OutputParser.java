@@ -1,117 +1,275 @@
 package it.insidecode.parser;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * Classe responsabile della scrittura e codifica del file binario contenente i risultati dei casi test.
- * 
+ * Le sequenze vengono codificate direttamente in un {@link ByteBuffer} riutilizzato, senza allocare
+ * array o oggetti intermedi per ogni sequenza. Le sequenze possono essere scritte nel formato originale o in
+ * quello esteso ({@link Format}), eventualmente compresso.
+ *
  * @author Federico Scozzafava
  *
  */
 public class OutputParser {
-	
+
+	/**
+	 * Dimensione del buffer usato per scrivere direttamente sul file di output
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Buffer in cui vengono codificate le sequenze: se l'output e' scritto direttamente su file viene
+	 * svuotato sul canale ogni volta che si riempie, altrimenti cresce fino alla chiamata di {@link #write(String)}
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Canale del file di output (null se le sequenze vengono mantenute in memoria)
+	 */
+	private WritableByteChannel channel;
+
+	/**
+	 * Formato dell'output
+	 */
+	private Format format;
+
+	/**
+	 * Un nuovo {@link OutputParser} mantiene le sequenze codificate in un buffer temporaneo
+	 * fino alla chiamata di {@link #write(String)}
+	 */
+	public OutputParser()
+	{
+		this(Format.LEGACY);
+	}
+
+	/**
+	 * Un nuovo {@link OutputParser} mantiene le sequenze codificate nel formato indicato in un buffer temporaneo
+	 * fino alla chiamata di {@link #write(String)}
+	 *
+	 * @param format il formato dell'output
+	 */
+	public OutputParser(Format format)
+	{
+		this.format = format;
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	}
+
+	/**
+	 * Un nuovo {@link OutputParser} che scrive le sequenze codificate direttamente sul file indicato,
+	 * senza mantenerle in memoria. Il file va chiuso con {@link #close()}
+	 *
+	 * @param fileName il file di output
+	 * @throws IOException se il file non puo' essere creato
+	 */
+	public OutputParser(String fileName) throws IOException
+	{
+		this(fileName, Format.LEGACY);
+	}
+
+	/**
+	 * Un nuovo {@link OutputParser} che scrive le sequenze codificate nel formato indicato direttamente sul file
+	 * indicato, senza mantenerle in memoria. Il file va chiuso con {@link #close()}
+	 *
+	 * @param fileName il file di output
+	 * @param format il formato dell'output
+	 * @throws IOException se il file non puo' essere creato
+	 */
+	public OutputParser(String fileName, Format format) throws IOException
+	{
+		this.format = format;
+		FileOutputStream stream = new FileOutputStream(new File(fileName));
+		try
+		{
+			channel = open(stream);
+		}
+		catch (IOException e)
+		{
+			stream.close();
+			throw e;
+		}
+		buffer = format == Format.DEFLATE? ByteBuffer.allocate(BUFFER_SIZE): ByteBuffer.allocateDirect(BUFFER_SIZE);
+	}
+
+	/**
+	 * Scrive l'intestazione del formato sullo stream indicato
+	 *
+	 * @param stream lo stream del file di output
+	 * @return il canale su cui scrivere le sequenze codificate, che le comprime se richiesto dal formato
+	 * @throws IOException
+	 */
+	private WritableByteChannel open(FileOutputStream stream) throws IOException
+	{
+		stream.write(format.header());
+		if (format == Format.DEFLATE) return Channels.newChannel(new DeflaterOutputStream(stream));
+		return stream.getChannel();
+	}
+
 	/**
-	 * Buffer temporaneo
+	 * @return il formato dell'output
 	 */
-	private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-	
+	public Format getFormat()
+	{
+		return format;
+	}
+
 	/**
 	 * Effettua il parsing (codifica in binario) della lista di oggetti {@link Sequence} passato in input bufferizzandolo temporaneamente
-	 * 
+	 *
 	 * @param sequences
 	 * @throws IOException
 	 */
 	public void parse(List<Sequence> sequences) throws IOException
 	{
 		for(Sequence s: sequences)
-			buffer.write(encodeSequence(s));
+			encodeSequence(s);
 	}
-	
+
 	/**
 	 * Codifica un oggetto di tipo {@link Sequence} in una sequenza di byte definita nel seguente modo:
-	 * Ogni oggetto {@link Sequence} e' rappresentato con 4 byte indicanti la coordinata x ed y del primo nodo, una serie di 
-	 * byte intermedi (composti da un valore di svolta d per i 3 bit meno significativi e un valore di lunghezza k per i 5 bit piu' significativi) 
+	 * Ogni oggetto {@link Sequence} e' rappresentato con 4 byte indicanti la coordinata x ed y del primo nodo, una serie di
+	 * byte intermedi (composti da un valore di svolta d per i 3 bit meno significativi e un valore di lunghezza k per i 5 bit piu' significativi)
 	 * rappresentanti k nodi in direzione d dall'ultimo nodo definito fino a quel momento, e un byte terminatore (0).
-	 * 
+	 * Nel formato esteso coordinate e serie di nodi sono valori a lunghezza variabile e le serie non hanno limite di lunghezza.
+	 *
 	 * @param s oggetto {@link Sequence} da codificare
-	 * @return un array di byte
+	 * @throws IOException se il buffer non puo' essere svuotato sul file
+	 * @throws IllegalArgumentException se le coordinate della sequenza non sono rappresentabili nel formato originale
 	 */
-	private byte[] encodeSequence(Sequence s)
+	private void encodeSequence(Sequence s) throws IOException
 	{
-		if(s.size() == 0) return new byte[] {(byte) 255}; // una sequenza vuota viene codificata con il byte 255
-		List<Byte> res = new ArrayList<Byte>();
-		Iterator<Integer> i = s.iterator();
-		int ppNode = i.next(); // prendiamo il primo elemento della sequenza e codifichiamo le coordinate x e y nei primi 4 byte della codifica
-		res.add((byte) ((ppNode/4/s.getHeight())/256));
-		res.add((byte) (((ppNode/4)/s.getHeight())%256));
-		res.add((byte) (((ppNode/4)%s.getHeight())/256));
-		res.add((byte) (((ppNode/4)%s.getHeight())%256));
-		int pNode = ppNode;
+		boolean extended = format.isExtended();
+		if(s.size() == 0) // una sequenza vuota viene codificata con il byte 255 (0 nel formato esteso)
+		{
+			if (extended) putVarint(0);
+			else put((byte) 255);
+			return;
+		}
+		int height = s.getHeight();
+		int node = s.get(0) >> 2; // prendiamo il primo elemento della sequenza e codifichiamo le coordinate x e y nei primi 4 byte della codifica
+		int px = node / height;
+		int py = node - px * height;
+		if (extended)
+		{
+			putVarint(px + 1);
+			putVarint(py);
+		}
+		else
+		{
+			if (px > 0xFFFF || py > 0xFFFF) throw new IllegalArgumentException("coordinates (" + px + ", " + py + ") exceed the legacy output format");
+			put((byte) (px >> 8));
+			put((byte) px);
+			put((byte) (py >> 8));
+			put((byte) py);
+		}
+		int maxRun = extended? Integer.MAX_VALUE >> 3: 31; // massimo numero di nodi di una serie
+		// coordinate del penultimo nodo esaminato, calcolate una sola volta per nodo
+		int ppx = px, ppy = py;
 		int counter = 0; // contatore di lunghezza della serie
 		Direction d = null; // direzione della serie corrente di nodi
-		while(i.hasNext())
+		for(int i = 1, n = s.size(); i < n; i++)
 		{
-			int x = i.next();
-			if (d == null) d = Direction.getDirection(pNode/4/s.getHeight(), (pNode/4)%s.getHeight(), x/4/s.getHeight(), (x/4)%s.getHeight());
-			boolean direction = changeDirection(ppNode, pNode, x, s.getHeight()); // valore che indica se analizzando il nodo attuale si giunge ad una svolta
-			if(counter == 31 && !direction) // se abbiamo raggiunto il limite di valori per la codifica usata senza incorrere in una svolta
+			node = s.get(i) >> 2;
+			int x = node / height;
+			int y = node - x * height;
+			if (d == null) d = Direction.getDirection(px, py, x, y);
+			boolean direction = !((ppx == px && px == x) || (ppy == py && py == y)); // valore che indica se analizzando il nodo attuale si giunge ad una svolta
+			if(counter == maxRun && !direction) // se abbiamo raggiunto il limite di valori per la codifica usata senza incorrere in una svolta
 			{
-				res.add(make(d, counter)); // scriviamo il valore attuale (max 32 di lunghezza) e separiamo l'intervallo individuato dalla codifica in piu' parti
+				putRun(d, counter); // scriviamo il valore attuale (max 32 di lunghezza) e separiamo l'intervallo individuato dalla codifica in piu' parti
 				counter = 0; // resettiamo il contatore per calcolare la nuova serie
 			}
 			if(direction) // se il nodo ci porta ad una svolta
 			{
-				res.add(make(d, counter)); // scriviamo il valore corrente immediatamente prima del nodo svolta e prepariamo le variabili per contare i nodi nella nuova direzione
-				d = Direction.getDirection(pNode/4/s.getHeight(), (pNode/4)%s.getHeight(), x/4/s.getHeight(), (x/4)%s.getHeight());
-				ppNode = pNode;
-				pNode = x;
+				putRun(d, counter); // scriviamo il valore corrente immediatamente prima del nodo svolta e prepariamo le variabili per contare i nodi nella nuova direzione
+				d = Direction.getDirection(px, py, x, y);
 				counter = 1; // dal momento che abbiamo prelevato un nuovo nodo, il contatore partira' da 1
 			}
-			else{ 
-				counter++;
-				ppNode = pNode;
-				pNode = x;
+			else counter++;
+			ppx = px;
+			ppy = py;
+			px = x;
+			py = y;
+		}
+		putRun(d, counter); // siamo giunti alla fine della sequenza, scriviamo il valore rappresentante i nodi rimanenti
+		put((byte) 0); // aggiungiamo il byte terminatore
+	}
+
+	/**
+	 * Scrive un byte nel buffer, svuotandolo sul file o ingrandendolo se e' pieno
+	 *
+	 * @param b il byte da scrivere
+	 * @throws IOException se il buffer non puo' essere svuotato sul file
+	 */
+	private void put(byte b) throws IOException
+	{
+		if (!buffer.hasRemaining())
+		{
+			if (channel != null) flush();
+			else
+			{
+				ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
 			}
 		}
-		res.add(make(d, counter)); // siamo giunti alla fine della sequenza, scriviamo il valore rappresentante i nodi rimanenti
-		res.add((byte) 0); // aggiungiamo il byte terminatore
-		byte[] result = new byte[res.size()];
-		counter = 0;
-		for(byte b: res) result[counter++] = b;
-		return result;
+		buffer.put(b);
 	}
 
 	/**
-	 * Dati i valori rappresentanti 3 nodi, ritorna vero se i nodi rappresentano una svolta, false altrimenti
-	 * 
-	 * @param node1
-	 * @param node2
-	 * @param node3
-	 * @param height l'altezza della griglia del caso test
-	 * @return se c'e' stato un cambio direzione
+	 * Scrive una serie di nodi nella stessa direzione
+	 *
+	 * @param d la direzione dei nodi
+	 * @param counter il numero di nodi
+	 * @throws IOException se il buffer non puo' essere svuotato sul file
 	 */
-	private boolean changeDirection(int node1, int node2, int node3, int height) {
-		node1 = node1/4;
-		node2 = node2/4;
-		node3 = node3/4;
-		int x1 = node1/height;
-		int y1 = node1%height;
-		int x2 = node2/height;
-		int y2 = node2%height;
-		int x3 = node3/height;
-		int y3 = node3%height;
-		return !((x1 == x2 && x2 == x3) || (y1 == y2 && y2 == y3));
+	private void putRun(Direction d, int counter) throws IOException
+	{
+		if (format.isExtended()) putVarint(counter << 3 | d.ordinal());
+		else put(make(d, counter));
+	}
+
+	/**
+	 * Scrive un intero non negativo codificato a lunghezza variabile (7 bit per byte, a partire dai meno
+	 * significativi)
+	 *
+	 * @param v il valore
+	 * @throws IOException se il buffer non puo' essere svuotato sul file
+	 */
+	private void putVarint(int v) throws IOException
+	{
+		while ((v & ~0x7F) != 0)
+		{
+			put((byte) (v & 0x7F | 0x80));
+			v >>>= 7;
+		}
+		put((byte) v);
+	}
+
+	/**
+	 * Scrive sul file il contenuto del buffer e lo svuota
+	 *
+	 * @throws IOException
+	 */
+	private void flush() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
 	}
 
 	/**
 	 * Data un valore di direzione {@link Direction} e un numero k di nodi codifica il byte rappresentante k nodi in direzione d
-	 * 
+	 *
 	 * @param d {@link Direction} rappresentante la direzione dei nodi
 	 * @param counter il numero di nodi
 	 * @return la codifica del byte
@@ -122,8 +280,8 @@ public class OutputParser {
 		res |= d.ordinal();
 		return (byte) res;
 	}
-	
-	
+
+
 	// da rimuovere
 	public static String toString(List<Byte> b)
 	{
@@ -135,15 +293,37 @@ public class OutputParser {
 
 	/**
 	 * Scrive su disco il contenuto presente nel buffer temporaneo
-	 * 
+	 *
 	 * @param fileName
 	 * @throws IOException
 	 */
 	public void write(String fileName) throws IOException {
-		File f = new File(fileName);
-		FileOutputStream stream = new FileOutputStream(f);
-		stream.write(buffer.toByteArray());
-		stream.close();
+		if (channel != null) throw new IllegalStateException("output already written to file");
+		FileOutputStream stream = new FileOutputStream(new File(fileName));
+		try {
+			WritableByteChannel out = open(stream);
+			buffer.flip();
+			while (buffer.hasRemaining())
+				out.write(buffer);
+			buffer.limit(buffer.capacity()); // il contenuto resta nel buffer, come le sequenze codificate in seguito
+			out.close(); // completa l'eventuale compressione
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Chiude il file di output, scrivendo su disco le sequenze ancora bufferizzate
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (channel == null) return;
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
 	}
 
 }
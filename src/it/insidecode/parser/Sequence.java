@@ -1,23 +1,17 @@
 package it.insidecode.parser;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
 
 
 /**
  * Rappresenta una sequenza iterabile di nodi del grafo come il contorno di una figura o una linea tracciata.
+ * I nodi sono mantenuti in una {@link IntSequence}, per cui aggiungerli in testa o in coda richiede tempo costante.
  * 
  * @author fscozzafava
  *
  */
-public class Sequence implements Iterable<Integer>{
-	
-	/**
-	 * Struttura dati che mantiene i nodi nell'ordine dato
-	 */
-	private List<Integer> seq = new ArrayList<Integer>();
+public class Sequence extends IntSequence implements Iterable<Integer>{
 	
 	/**
 	 * L'altezza della matrice del grafo
@@ -25,23 +19,43 @@ public class Sequence implements Iterable<Integer>{
 	private int height;
 	
 	/**
-	 * Aggiunge un nodo alla sequenza
+	 * Aggiunge un nodo in testa alla sequenza
 	 * 
 	 * @param n il nodo da aggiungere
 	 */
-	public void addNode(Integer n) { seq.add(0, n);}
+	public void addNode(int n) { addFirst(n);}
 	
 	/**
-	 * Aggiunge una collezione di nodi alla sequenza
+	 * Aggiunge una collezione di nodi in coda alla sequenza
 	 * 
 	 * @param nodes collezione di nodi
 	 */
-	public void addNodes(Integer... nodes) { Collections.addAll(seq, nodes); }
+	public void addNodes(int... nodes) { addAll(nodes); }
 
+	/**
+	 * Iteratore sui nodi della sequenza. Effettua il boxing di ogni nodo: nei cicli critici e' preferibile
+	 * usare {@link #ints()} o {@link #get(int)}
+	 */
 	@Override
 	public Iterator<Integer> iterator() 
 	{
-		return seq.iterator();
+		return new Iterator<Integer>()
+		{
+			private int i = 0;
+			
+			@Override
+			public boolean hasNext() { return i < size();}
+
+			@Override
+			public Integer next()
+			{
+				if (i >= size()) throw new NoSuchElementException();
+				return get(i++);
+			}
+
+			@Override
+			public void remove() { throw new UnsupportedOperationException();}
+		};
 	}
 	
 	/**
@@ -67,20 +81,13 @@ public class Sequence implements Iterable<Integer>{
 	/**
 	 * @return il primo nodo della sequenza, se la sequenza e' vuota ritorna null
 	 */
-	public Integer getFirst() {if(size() < 1) return null; return seq.get(0);}
+	public Integer getFirst() {if(size() < 1) return null; return get(0);}
 
 	/**
 	 * @return l'ultimo nodo della sequenza, se la sequenza e' vuota ritorna null
 	 */
 	public Integer getLast() {
 		if(size() < 1) return null;
-		return seq.get(seq.size()-1);
-	}
-
-	/**
-	 * @return la numero di nodi della sequenza
-	 */
-	public int size() {
-		return seq.size();
+		return get(size()-1);
 	}
 }
@@ -0,0 +1,60 @@
+package it.insidecode.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Lettore sequenziale dei byte forniti da un {@link InputStream}, usato per i
+ * file che non possono essere mappati in memoria cosi' come sono (ad esempio
+ * perche' compressi). I byte vengono letti a blocchi di dimensione fissa in un
+ * buffer riutilizzato, per cui il contenuto dello stream non viene mai
+ * caricato per intero nello heap.
+ *
+ * @author Federico Scozzafava
+ *
+ */
+public class StreamReader extends BinaryReader {
+
+	/**
+	 * Dimensione del blocco letto ad ogni chiamata di {@link #fill()}
+	 */
+	private static final int CHUNK = 1 << 16;
+
+	/**
+	 * Lo stream da cui vengono letti i byte
+	 */
+	private InputStream in;
+
+	/**
+	 * Array su cui e' costruito il buffer
+	 */
+	private byte[] chunk = new byte[CHUNK];
+
+	/**
+	 * Istanzia un nuovo lettore dello stream indicato
+	 *
+	 * @param in
+	 *            lo stream, chiuso da {@link #close()}
+	 */
+	public StreamReader(InputStream in) {
+		this.in = in;
+	}
+
+	@Override
+	protected boolean fill() throws IOException {
+		int n = in.read(chunk);
+		while (n == 0)
+			n = in.read(chunk);
+		if (n < 0)
+			return false;
+		offset += buffer.limit();
+		buffer = ByteBuffer.wrap(chunk, 0, n);
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
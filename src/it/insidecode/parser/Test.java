@@ -1,7 +1,13 @@
 package it.insidecode.parser;
 
-import it.insidecode.core.Graph;
+import it.insidecode.core.BufferPool;
+import it.insidecode.core.CompactGraph;
+import it.insidecode.core.GridGraph;
+import it.insidecode.core.OverlayGraph;
 import it.insidecode.core.Router;
+import it.insidecode.core.RoutingOptions;
+import it.insidecode.core.SearchSummary;
+import it.insidecode.core.SpeculativeRouter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -19,6 +25,9 @@ public class Test
 	private int width;
 	private int height;
 	private List<Sequence> figures = new ArrayList<Sequence>();
+	private RoutingOptions options = new RoutingOptions();
+	private long settled; //nodi espansi dall'ultima esecuzione del test
+	private SearchSummary summary; //statistiche dell'ultima esecuzione, raccolte solo se le opzioni hanno un listener
 	
 	/**
 	 * Un nuovo {@link Test} e' costruto con la larghezza e l'altezza della griglia
@@ -39,20 +48,141 @@ public class Test
 	 */
 	public List<Sequence> run()
 	{
-		Graph g = new Graph(width, height);
+		// gli array del grafo e del router vengono presi dal pool delle opzioni e restituiti al termine,
+		// in modo che il caso test successivo possa riutilizzarli
+		GridGraph g = options.getLayout().create(width, height, options.getPool(), options.getStorage());
+		try
+		{
+			removeFigures(g);
+			return route(g);
+		}
+		finally
+		{
+			g.release();
+		}
+	}
+
+	/**
+	 * Crea il grafo di base del test, privo delle sole figure, da condividere tra piu' esecuzioni
+	 * con {@link #run(CompactGraph)}: il grafo viene congelato e non deve essere liberato finche'
+	 * le esecuzioni che lo usano non sono terminate
+	 * 
+	 * @return il grafo di base
+	 */
+	public CompactGraph createBase()
+	{
+		CompactGraph base = new CompactGraph(width, height, BufferPool.NONE, options.getStorage());
+		removeFigures(base);
+		base.freeze();
+		return base;
+	}
+
+	/**
+	 * Esegue l'algoritmo sul test corrente in una sessione ({@link OverlayGraph}) sul grafo di base
+	 * indicato, che non viene modificato: piu' esecuzioni, anche contemporanee, possono condividere
+	 * la stessa base. Solo il livello del grafo cresce con le linee tracciate (la sessione registra i
+	 * {@code BigNode} attraversati dai propri cammini): ogni esecuzione crea comunque un proprio
+	 * {@link Router}, il cui stato di ricerca e la cui coda hanno un elemento per ogni {@code node}
+	 * della griglia
+	 * 
+	 * @param base il grafo creato da {@link #createBase()}
+	 * @return una lista di oggetti {@link Sequence} rappresentante i percorsi minimi
+	 */
+	public List<Sequence> run(CompactGraph base)
+	{
+		if (base.getWidth() != width || base.getHeight() != height)
+			throw new IllegalArgumentException("base graph size differs from the test grid");
+		OverlayGraph g = new OverlayGraph(base);
+		try
+		{
+			return route(g);
+		}
+		finally
+		{
+			g.release();
+		}
+	}
+
+	/**
+	 * Rimuove dal grafo i {@code BigNode} dei contorni delle figure
+	 */
+	private void removeFigures(GridGraph g)
+	{
 		for (Sequence x: figures)
 		{
-			for (Integer y: x)
-				g.removeBigNode(y);
+			for (int i = 0; i < x.size(); i++)
+				g.removeBigNode(x.get(i));
+		}
+	}
+
+	/**
+	 * Instrada le coppie del test nel grafo indicato, tracciandone i cammini
+	 */
+	private List<Sequence> route(GridGraph g)
+	{
+		if (isSpeculative())
+		{
+			// le coppie vengono instradate in parallelo con lo stesso risultato dell'esecuzione sequenziale
+			SpeculativeRouter sr = new SpeculativeRouter(g, options, options.getSpeculativeThreads());
+			try
+			{
+				List<Sequence> res = sr.route(g, pairs);
+				settled = sr.getSettled();
+				return res;
+			}
+			finally
+			{
+				sr.release();
+			}
 		}
-		
 		List<Sequence> res = new ArrayList<Sequence>();
-		Router r = new Router(g);
-		for (Pair<Integer> p: pairs)
+		Router r = new Router(g, options);
+		try
+		{
+			if (options.getListener() != null)
+			{
+				summary = new SearchSummary(options.getListener());
+				r.setListener(summary);
+			}
+			for (Pair<Integer> p: pairs)
+			{
+				res.add(r.route(g, p.getFirst(), p.getSecond()));
+			}
+			settled = r.getSettled();
+			return res;
+		}
+		finally
 		{
-			res.add(r.dijkstra(g, p.getFirst(), p.getSecond()));
+			r.release();
 		}
-		return res;
+	}
+
+	/**
+	 * Stima la memoria necessaria all'esecuzione del test: il grafo e lo stato della ricerca occupano
+	 * una quantita' di memoria costante per ogni {@code node} della griglia
+	 * 
+	 * @return la memoria stimata in byte
+	 */
+	public long estimateMemory()
+	{
+		// distanza, padre, epoca e posizione in coda per ogni node, piu' il grafo
+		long perNode = 8 + 4 + 4 + 4;
+		if (options.getSearch() == RoutingOptions.Search.BIDIRECTIONAL) perNode += 8 + 4 + 4 + 4;
+		// stato delle distanze della ricerca parallela
+		if (options.getSearch() == RoutingOptions.Search.DELTA_STEPPING) perNode += 8 + 4 + 4;
+		// ogni thread della modalita' speculativa ha il proprio stato e la propria marcatura dei BigNode letti
+		if (isSpeculative()) perNode = (perNode + 1) * options.getSpeculativeThreads();
+		return (long) width * height * (4 * perNode + options.getLayout().bytesPerBigNode());
+	}
+	
+	/**
+	 * @return true se le coppie vanno instradate con {@link SpeculativeRouter}: le opzioni lo richiedono, la ricerca
+	 * puo' rimandare il tracciamento dei cammini e non vanno raccolte statistiche
+	 */
+	private boolean isSpeculative()
+	{
+		return options.getSpeculativeThreads() > 1 && options.getListener() == null
+				&& options.getSearch() != RoutingOptions.Search.HIERARCHICAL;
 	}
 
 	/**
@@ -75,10 +205,36 @@ public class Test
 		figures.add(s);
 	}
 	
+	/**
+	 * Imposta le opzioni {@link RoutingOptions} con cui vengono calcolati i cammini del test
+	 * 
+	 * @param options
+	 */
+	public void setOptions(RoutingOptions options)
+	{
+		this.options = options;
+	}
+	
 	/**
 	 * @return l'insieme degli oggetti {@link Sequence} rappresentati i contorni delle figure del test
 	 */
 	public List<Sequence> getFigures() { return figures;}
+	
+	/**
+	 * @return l'insieme delle coppie di nodi da collegare
+	 */
+	public List<Pair<Integer>> getPairs() { return pairs;}
+	
+	/**
+	 * @return il numero di nodi espansi dal router durante l'ultima esecuzione di {@link #run()}
+	 */
+	public long getSettled() { return settled;}
+	
+	/**
+	 * @return le statistiche aggregate dell'ultima esecuzione di {@link #run()}, null se le opzioni non hanno
+	 * un {@link it.insidecode.core.RouterListener} registrato
+	 */
+	public SearchSummary getSummary() { return summary;}
 
 	/**
 	 * @return la larghezza della griglia